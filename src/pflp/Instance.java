@@ -53,6 +53,13 @@ public class Instance
 	private int map_width = 0;
 	private int map_height = 0;
 
+	//offset added to the input coordinates by adjust_coordinates()
+	private double offset_x = 0;
+	private double offset_y = 0;
+
+	//true <-> all nodes are integral and use the fixed point mode
+	private boolean fixed_point = false;
+
 	private String name = "<not yet set>";
 
 	//static helper functions
@@ -87,12 +94,17 @@ public class Instance
 	 */
 	public Instance(Vector v, String solution_name)
 	{
-		int i;
-		nodes = new PointFeature[v.size()];
-		for (i = 0; i < v.size(); i++)
-			nodes[i] = (PointFeature)v.get(i);
+		this((PointFeature[]) v.toArray(new PointFeature[v.size()]), solution_name);
+	}
+
+	/**
+	 * creates an instance with the given nodes (the array is not copied)
+	 */
+	public Instance(PointFeature[] n, String solution_name)
+	{
+		nodes = n;
 
-		System.out.println(i + " labels processed...");
+		System.out.println(nodes.length + " labels processed...");
 		name = solution_name;
 
 		adjust_coordinates();
@@ -112,6 +124,8 @@ public class Instance
 
 		System.out.println("creating random instance with " + RANDOM_MAP_LABELS + " nodes...");
 
+		SplittableRandom random = PFLPApp.createRandom();
+
 		//create random nodes
 		boolean[][] taken = new boolean[RANDOM_MAP_WIDTH][RANDOM_MAP_HEIGHT];
 		for (i = 0; i < RANDOM_MAP_WIDTH; i++)
@@ -124,8 +138,8 @@ public class Instance
 			int x, y;
 			do
 			{
-				x = PFLPApp.random_generator.nextInt(RANDOM_MAP_WIDTH);
-				y = PFLPApp.random_generator.nextInt(RANDOM_MAP_HEIGHT);
+				x = random.nextInt(RANDOM_MAP_WIDTH);
+				y = random.nextInt(RANDOM_MAP_HEIGHT);
 
 			}
 			while (taken[x][y]);
@@ -133,17 +147,17 @@ public class Instance
 			taken[x][y] = true;
 
 			//generate random text
-			int text_length = PFLPApp.random_generator.nextInt(8) + 4;
+			int text_length = random.nextInt(8) + 4;
 			byte s[] = new byte[text_length];
 			for (; text_length-- > 0;)
-				s[text_length] = (new Integer(65 + PFLPApp.random_generator.nextInt(91 - 65))).byteValue();
+				s[text_length] = (new Integer(65 + random.nextInt(91 - 65))).byteValue();
 			String text = new String(s);
 
 			//determine the type of the city (priority)
 			int priority = 1;
-			if (PFLPApp.random_generator.nextDouble() < RANDOM_PCT_BIG_CITIES)
+			if (random.nextDouble() < RANDOM_PCT_BIG_CITIES)
 				priority = 3;
-			else if (PFLPApp.random_generator.nextDouble() < RANDOM_PCT_MEDIUM_CITIES)
+			else if (random.nextDouble() < RANDOM_PCT_MEDIUM_CITIES)
 				priority = 2;
 
 			nodes[i] = new PointFeature(x * RANDOM_MAP_SCALE, y * RANDOM_MAP_SCALE, priority, text);
@@ -528,6 +542,9 @@ public class Instance
 		double h_offset = -min_x;
 		double v_offset = -min_y;
 
+		offset_x = h_offset;
+		offset_y = v_offset;
+
 		double max_x = Double.MIN_VALUE;
 		double max_y = Double.MIN_VALUE;
 
@@ -549,7 +566,92 @@ public class Instance
 		map_width = (int)Math.ceil(max_x);
 		map_height = (int)Math.ceil(max_y);
 
-		System.out.println("done");
+		//exact geometry, if all coordinates are integers
+		fixed_point = true;
+		for (int i = 0; i < nodes.length && fixed_point; i++)
+			fixed_point = nodes[i].isIntegral();
+
+		setFixedPoint(fixed_point);
+
+		System.out.println("done" + (fixed_point ? " (fixed point mode)" : ""));
+	}
+
+	/**
+	 * enlarges the map to contain the label of the given node in any
+	 * position. The fixed point mode is disabled, if the node is not
+	 * integral.
+	 */
+	private void adjust_map_size(PointFeature c)
+	{
+		map_width = Math.max(map_width, (int)Math.ceil(c.getX() + c.getWidth()));
+		map_height = Math.max(map_height, (int)Math.ceil(c.getY() + c.getHeight()));
+
+		if (fixed_point && !c.isIntegral())
+			setFixedPoint(false);
+		else
+			c.setFixedPoint(fixed_point);
+	}
+
+	private void setFixedPoint(boolean b)
+	{
+		fixed_point = b;
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i].setFixedPoint(b);
+	}
+
+	/**
+	 * returns true, if all nodes are integral and the labels are placed
+	 * in fixed point mode (see PointFeature.setFixedPoint())
+	 */
+	public boolean isFixedPoint()
+	{
+		return fixed_point;
+	}
+
+	/**
+	 * appends a node to the instance. The coordinates of the node are
+	 * expected to be in the coordinate system of the input file, they are
+	 * translated like the coordinates of all other nodes.
+	 * @return the index of the new node
+	 */
+	public int addNode(PointFeature c)
+	{
+		int i = nodes.length;
+
+		c.setX(c.getX() + offset_x);
+		c.setY(c.getY() + offset_y);
+
+		nodes = Arrays.copyOf(nodes, i + 1);
+		nodes[i] = c;
+
+		adjust_map_size(c);
+		return i;
+	}
+
+	/**
+	 * removes the node with the given index. The last node is moved
+	 * to the free position.
+	 */
+	public void removeNode(int i)
+	{
+		int last = nodes.length - 1;
+
+		nodes[i] = nodes[last];
+		nodes = Arrays.copyOf(nodes, last);
+	}
+
+	/**
+	 * moves the node with the given index to (x, y), given in the
+	 * coordinate system of the input file.
+	 */
+	public void moveNode(int i, double x, double y)
+	{
+		PointFeature c = nodes[i];
+
+		c.setX(x + offset_x);
+		c.setY(y + offset_y);
+
+		adjust_map_size(c);
 	}
 
 	/**
@@ -46,6 +46,11 @@ public class Label extends Object
 	private double lbl_h_offset = 0.0; // 0 <= lbl_h_offset <= node.lbl_width
 	private double lbl_v_offset = 0.0; // 0 <= lbl_v_offset <= node.lbl_height
 
+	//the offsets in fixed point representation, only maintained in fixed
+	//point mode (see PointFeature.setFixedPoint())
+	private long fixed_h_offset = 0;
+	private long fixed_v_offset = 0;
+
 	//true <-> label is not included in the current solution
 	private boolean unplacable = false;
 	
@@ -73,6 +78,8 @@ public class Label extends Object
 		node = label.getNode();
 		lbl_h_offset = label.getOffsetHorizontal();
 		lbl_v_offset = label.getOffsetVertical();
+		fixed_h_offset = label.fixed_h_offset;
+		fixed_v_offset = label.fixed_v_offset;
 		unplacable = label.getUnplacable();
 		index = label.getIndex();
 	}
@@ -127,6 +134,9 @@ public class Label extends Object
 	 */
 	public boolean doesIntersect(Label l2)
 	{
+		if (node.isFixedPoint() && l2.node.isFixedPoint())
+			return doesIntersectHorizontalFixed(l2) && doesIntersectVerticalFixed(l2);
+
 		Point2D.Double tl1 = getTopleft();
 		Point2D.Double tl2 = l2.getTopleft();
 
@@ -141,6 +151,9 @@ public class Label extends Object
 	 */
 	public boolean doesIntersectHorizontal(Label l2)
 	{
+		if (node.isFixedPoint() && l2.node.isFixedPoint())
+			return doesIntersectHorizontalFixed(l2);
+
 		Point2D.Double tl1 = getTopleft();
 		Point2D.Double tl2 = l2.getTopleft();
 
@@ -153,19 +166,39 @@ public class Label extends Object
 	 */
 	public boolean doesIntersectVertical(Label l2)
 	{
+		if (node.isFixedPoint() && l2.node.isFixedPoint())
+			return doesIntersectVerticalFixed(l2);
+
 		Point2D.Double tl1 = getTopleft();
 		Point2D.Double tl2 = l2.getTopleft();
 
 		return ((tl2.y + l2.getHeight() > tl1.y && tl2.y < tl1.y + getHeight()));
 	}
 
+	private boolean doesIntersectHorizontalFixed(Label l2)
+	{
+		long x1 = node.getFixedX() - fixed_h_offset;
+		long x2 = l2.node.getFixedX() - l2.fixed_h_offset;
+
+		return x2 + l2.node.getFixedWidth() > x1 && x2 < x1 + node.getFixedWidth();
+	}
+
+	private boolean doesIntersectVerticalFixed(Label l2)
+	{
+		long y1 = node.getFixedY() - fixed_v_offset;
+		long y2 = l2.node.getFixedY() - l2.fixed_v_offset;
+
+		return y2 + l2.node.getFixedHeight() > y1 && y2 < y1 + node.getFixedHeight();
+	}
+
 	/**
 	 * Searches a starting position for the given label.
+	 * @param random the random stream to use
 	 */
-	public void findInitialPlacement()
+	public void findInitialPlacement(SplittableRandom random)
 	{
 		//use randomly one of the four corners....
-		moveTo(getWidth() * PFLPApp.random_generator.nextInt(2), getHeight() * PFLPApp.random_generator.nextInt(2));
+		moveTo(getWidth() * random.nextInt(2), getHeight() * random.nextInt(2));
 	}
 
 	public void moveTo(int pos)
@@ -183,13 +216,25 @@ public class Label extends Object
 	 * Moves the label to the position. Note, that the given values are not
 	 * checked and should be calculated carefully.
 	 * A offset of (0, 0) means the lower right corner.
+	 * In fixed point mode the offsets are rounded to the next multiple
+	 * of 1 / PointFeature.FIXED_POINT_SCALE.
 	 * @param h_offset the horizontal offset
 	 * @param v_offset the vertical offset
 	 */
 	public void moveTo(double h_offset, double v_offset)
 	{
-		lbl_h_offset = h_offset;
-		lbl_v_offset = v_offset;
+		if (node.isFixedPoint())
+		{
+			fixed_h_offset = PointFeature.toFixedPoint(h_offset);
+			fixed_v_offset = PointFeature.toFixedPoint(v_offset);
+			lbl_h_offset = fixed_h_offset / PointFeature.FIXED_POINT_SCALE;
+			lbl_v_offset = fixed_v_offset / PointFeature.FIXED_POINT_SCALE;
+		}
+		else
+		{
+			lbl_h_offset = h_offset;
+			lbl_v_offset = v_offset;
+		}
 	}
 
 	/**
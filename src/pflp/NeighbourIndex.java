@@ -0,0 +1,245 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the point features of an instance. It is used to
+ * build the lists of neighbours (labels that can intersect in at least
+ * one position) without comparing every pair of points.
+ * <br>
+ * Points outside the initial bounding box are stored in the border cells,
+ * so the index stays valid if points are inserted or moved later on.
+ */
+public class NeighbourIndex
+{
+	private static final int INITIAL_CELL_CAPACITY = 4;
+
+	//upper bound for the number of cells per point feature
+	private static final double CELLS_PER_POINT = 2.0;
+
+	/**
+	 * a single cell of the grid
+	 */
+	private static class Cell
+	{
+		int[] ids = new int[INITIAL_CELL_CAPACITY];
+		PointFeature[] points = new PointFeature[INITIAL_CELL_CAPACITY];
+		int count = 0;
+	}
+
+	private Cell[] cells = null;
+	private int columns = 0;
+	private int rows = 0;
+
+	private double min_x = 0, min_y = 0;
+	private double cell_width = 1, cell_height = 1;
+
+	//the largest label dimensions of all inserted points
+	private double max_width = 0, max_height = 0;
+
+	//the result of the last call to query()
+	private int[] result = new int[16];
+
+	/**
+	 * creates the index for the given point features. The position
+	 * of a point feature in the array is used as its id.
+	 */
+	public NeighbourIndex(PointFeature[] nodes)
+	{
+		double max_x = 0, max_y = 0;
+
+		min_x = Double.MAX_VALUE;
+		min_y = Double.MAX_VALUE;
+		max_x = -Double.MAX_VALUE;
+		max_y = -Double.MAX_VALUE;
+
+		for (int i = 0; i < nodes.length; i++)
+		{
+			PointFeature p = nodes[i];
+
+			min_x = Math.min(min_x, p.getX());
+			min_y = Math.min(min_y, p.getY());
+			max_x = Math.max(max_x, p.getX());
+			max_y = Math.max(max_y, p.getY());
+
+			max_width = Math.max(max_width, p.getWidth());
+			max_height = Math.max(max_height, p.getHeight());
+		}
+
+		if (nodes.length == 0)
+			min_x = min_y = max_x = max_y = 0;
+
+		//two points with intersecting labels are at most one cell apart...
+		cell_width = Math.max(2 * max_width, 1e-6);
+		cell_height = Math.max(2 * max_height, 1e-6);
+
+		//...but sparse maps shouldn't end up with a huge number of empty cells
+		double max_cells = Math.max(1, CELLS_PER_POINT * nodes.length);
+		double w = max_x - min_x + cell_width;
+		double h = max_y - min_y + cell_height;
+		if ((w / cell_width) * (h / cell_height) > max_cells)
+		{
+			double f = Math.sqrt((w / cell_width) * (h / cell_height) / max_cells);
+			cell_width *= f;
+			cell_height *= f;
+		}
+
+		columns = (int) Math.max(1, Math.ceil(w / cell_width));
+		rows = (int) Math.max(1, Math.ceil(h / cell_height));
+		cells = new Cell[columns * rows];
+
+		for (int i = 0; i < nodes.length; i++)
+			insert(i, nodes[i]);
+	}
+
+	private int column(double x)
+	{
+		int c = (int) Math.floor((x - min_x) / cell_width);
+		return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+	}
+
+	private int row(double y)
+	{
+		int r = (int) Math.floor((y - min_y) / cell_height);
+		return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+	}
+
+	/**
+	 * adds the given point feature with the given id to the index
+	 */
+	public void insert(int id, PointFeature p)
+	{
+		int k = row(p.getY()) * columns + column(p.getX());
+		Cell c = cells[k];
+
+		if (c == null)
+			c = cells[k] = new Cell();
+
+		if (c.count == c.ids.length)
+		{
+			c.ids = Arrays.copyOf(c.ids, 2 * c.count);
+			c.points = Arrays.copyOf(c.points, 2 * c.count);
+		}
+
+		c.ids[c.count] = id;
+		c.points[c.count] = p;
+		c.count++;
+
+		max_width = Math.max(max_width, p.getWidth());
+		max_height = Math.max(max_height, p.getHeight());
+	}
+
+	/**
+	 * removes the given point feature from the index. The coordinates of
+	 * the point must not have changed since it has been inserted.
+	 * @return true <-> the point has been found
+	 */
+	public boolean remove(PointFeature p)
+	{
+		Cell c = cells[row(p.getY()) * columns + column(p.getX())];
+
+		for (int i = 0; c != null && i < c.count; i++)
+		{
+			if (c.points[i] == p)
+			{
+				c.count--;
+				c.ids[i] = c.ids[c.count];
+				c.points[i] = c.points[c.count];
+				c.points[c.count] = null;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * changes the id of the given point feature
+	 * @return true <-> the point has been found
+	 */
+	public boolean renumber(PointFeature p, int id)
+	{
+		Cell c = cells[row(p.getY()) * columns + column(p.getX())];
+
+		for (int i = 0; c != null && i < c.count; i++)
+		{
+			if (c.points[i] == p)
+			{
+				c.ids[i] = id;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * searches all point features whose labels can intersect the label
+	 * of p in any position. The ids of the found points are stored in
+	 * ascending order in the array returned by getResult().
+	 * @param p the point feature to look for
+	 * @param self id that should be excluded from the result (or -1)
+	 * @return the number of found point features
+	 */
+	public int query(PointFeature p, int self)
+	{
+		double dx = p.getWidth() + max_width;
+		double dy = p.getHeight() + max_height;
+
+		int c0 = column(p.getX() - dx), c1 = column(p.getX() + dx);
+		int r0 = row(p.getY() - dy), r1 = row(p.getY() + dy);
+		int n = 0;
+
+		for (int r = r0; r <= r1; r++)
+		{
+			for (int c = c0; c <= c1; c++)
+			{
+				Cell cell = cells[r * columns + c];
+				if (cell == null)
+					continue;
+
+				for (int i = 0; i < cell.count; i++)
+				{
+					if (cell.ids[i] == self || cell.points[i] == p || !p.canIntersect(cell.points[i]))
+						continue;
+
+					if (n == result.length)
+						result = Arrays.copyOf(result, 2 * n);
+
+					result[n++] = cell.ids[i];
+				}
+			}
+		}
+
+		Arrays.sort(result, 0, n);
+		return n;
+	}
+
+	/**
+	 * @return the ids found by the last call to query()
+	 */
+	public int[] getResult()
+	{
+		return result;
+	}
+}
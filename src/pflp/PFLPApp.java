@@ -24,7 +24,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import javax.swing.JOptionPane;
 
@@ -61,8 +61,31 @@ public class PFLPApp
 	private static boolean point_selection = true;
 	private static boolean debug_iterations = false;
 
-	//random generator
-	public static final Random random_generator = new Random();
+	//time budget of the exact postprocessing in ms, 0 <-> disabled
+	private static long exact_postprocessing = 0;
+
+	//the source of all random streams, see createRandom()
+	private static SplittableRandom random_seeds = new SplittableRandom();
+
+	/**
+	 * sets the seed of all random streams created afterwards. Without a
+	 * seed every program run uses different random numbers.
+	 */
+	public static synchronized void setSeed(long seed)
+	{
+		random_seeds = new SplittableRandom(seed);
+	}
+
+	/**
+	 * returns a new independent random stream. Every algorithm run gets a
+	 * stream of its own (see SearchThread.random), so the results can be
+	 * reproduced with a fixed seed (see setSeed()), as long as the streams
+	 * are created in the same order.
+	 */
+	public static synchronized SplittableRandom createRandom()
+	{
+		return random_seeds.split();
+	}
 
 	/**
 	 * called by the {@link LblGUI user interface object} when the
@@ -165,6 +188,94 @@ public class PFLPApp
 		gui.setStatusText("done");
 	}
 
+	/**
+	 * adds a new point feature to the current instance and repairs the
+	 * current solution in the neighbourhood of the new label
+	 * @param p the new point feature, coordinates as in the input file
+	 * @return the index of the new label or -1, if there is no solution
+	 */
+	public static int onInsertPointFeature(PointFeature p)
+	{
+		if (!canEditInstance())
+			return -1;
+
+		solution.acquireAccess();
+		int i = solution.addPointFeature(p);
+		repairSolution();
+		solution.releaseAccess();
+
+		if (gui != null)
+			gui.redraw(true);
+
+		return i;
+	}
+
+	/**
+	 * removes the point feature with the given index from the current
+	 * instance and repairs the solution in its neighbourhood. Note that
+	 * the last label takes over the index.
+	 */
+	public static void onRemovePointFeature(int index)
+	{
+		if (!canEditInstance())
+			return;
+
+		solution.acquireAccess();
+		solution.removePointFeature(index);
+		repairSolution();
+		solution.releaseAccess();
+
+		if (gui != null)
+			gui.redraw(true);
+	}
+
+	/**
+	 * moves the point feature with the given index to (x, y) and
+	 * repairs the solution in the old and new neighbourhood
+	 */
+	public static void onMovePointFeature(int index, double x, double y)
+	{
+		if (!canEditInstance())
+			return;
+
+		solution.acquireAccess();
+		solution.movePointFeature(index, x, y);
+		repairSolution();
+		solution.releaseAccess();
+
+		if (gui != null)
+			gui.redraw(true);
+	}
+
+	private static boolean canEditInstance()
+	{
+		if (isBusy())
+		{
+			System.err.println("can't change the instance while an algorithm is running...");
+			return false;
+		}
+
+		if (instance == null || solution == null)
+		{
+			System.err.println("can't change the instance without a solution...");
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * lets the selected algorithm re-optimize the labels affected
+	 * by the last changes of the instance
+	 */
+	private static void repairSolution()
+	{
+		int[] dirty = solution.takeDirtyLabels();
+
+		if (dirty.length > 0)
+			algorithms[selected_algorithm].repair(solution, dirty);
+	}
+
 	public static void onAlgorithmChanged(int index)
 	{
 		if (isBusy())
@@ -310,6 +421,25 @@ public class PFLPApp
 		return point_selection;
 	}
 
+	/**
+	 * enables the {@link ExactPostprocessing exact postprocessing} after
+	 * the removal of intersecting labels
+	 * @param time_budget the maximal running time in ms, 0 disables it
+	 */
+	public static void setOptionExactPostprocessing(long time_budget)
+	{
+		exact_postprocessing = time_budget;
+	}
+
+	/**
+	 * returns the time budget of the exact postprocessing in ms
+	 * (0 <-> disabled)
+	 */
+	public static long getOptionExactPostprocessing()
+	{
+		return exact_postprocessing;
+	}
+
 	/** 
 	 * true if at least one search algorithm is running..
 	 *
@@ -324,12 +454,13 @@ public class PFLPApp
 
 	private static void registerAlgorithms()
 	{
-		algorithms = new SearchThread[5];
+		algorithms = new SearchThread[6];
 		algorithms[0] = new ForceDirectedLabeling();
 		algorithms[1] = new SimulatedAnnealing();
 		algorithms[2] = new HirschLabeling();
 		algorithms[3] = new LeftmostHeuristic();
 		algorithms[4] = new RandomPlacement();
+		algorithms[5] = new MultilevelLabeling((SimulatedAnnealing) algorithms[1]);
 	}
 
 	private static void usage()
@@ -337,13 +468,40 @@ public class PFLPApp
 		String usage = new String();
 
 		usage += "PFLPApp \n";
-		usage += "\t[ --batch <filename> \n\t [--retries <n>] \n\t [--disable-point-selection] \n\t [--solution <file_prfx>] \n\t [--algorithm {fdl|fdlcu|sa|hirsch|leftmost|random}]\n\t]\n";
+		usage += "\t[ --batch <filename> \n\t [--retries <n>] \n\t [--disable-point-selection] \n\t [--exact-postprocessing <ms>] \n\t [--solution <file_prfx>] \n\t [--algorithm {fdl|fdlcu|sa|hirsch|leftmost|random|multilevel}]\n\t [--positions {4pos|8pos|1slider|4slider}]\n\t [--schedule {geometric|lam|acceptance|reheat}]\n\t [--far-field]\n\t [--seed <n>]\n\t]\n";
+		usage += "\t[--tiled <filename> -o <outfile.sol> \n\t [--tile-points <n>] \n\t [--disable-point-selection] \n\t [--exact-postprocessing <ms>] \n\t [--algorithm {fdl|fdlcu|sa|hirsch|leftmost|random|multilevel}]\n\t [--positions {4pos|8pos|1slider|4slider}]\n\t [--schedule {geometric|lam|acceptance|reheat}]\n\t [--far-field]\n\t [--seed <n>]\n\t]\n";
 		usage += "\t[--dump-min-dist <filename.sol> -o <outfile.dist>]\n";
 		//usage += "\t[--beautify <filename.sol> -o <outfile.sol>]";
 		System.out.println(usage);
 		System.exit(1);
 	}
 
+	/**
+	 * returns the algorithm with the given command line name or null
+	 */
+	private static SearchThread findAlgorithm(String alg)
+	{
+		if (alg.equals("fdl"))
+			return algorithms[0];
+		else if (alg.equals("sa"))
+			return algorithms[1];
+		else if (alg.equals("hirsch"))
+			return algorithms[2];
+		else if (alg.equals("leftmost"))
+			return algorithms[3];
+		else if (alg.equals("random"))
+			return algorithms[4];
+		else if (alg.equals("multilevel"))
+			return algorithms[5];
+		else if (alg.equals("fdlcu"))
+		{
+			((ForceDirectedLabeling)algorithms[0]).enableSimpleCleanup();
+			return algorithms[0];
+		}
+
+		return null;
+	}
+
 	private static boolean dumpMinDistance(String in_file, String out_file)
 	{
 		System.out.println("Reading " + in_file + "...");
@@ -422,6 +580,8 @@ public class PFLPApp
 		System.out.println("processing " + batch_file + "...");
 		System.out.println("-----------------------------------------------------------------------------");
 		System.out.println("point selection: " + (getOptionPointSelection() ? "yes" : "no"));
+		if (getOptionExactPostprocessing() > 0)
+			System.out.println("exact postprocessing: " + getOptionExactPostprocessing() + " ms");
 		
 		long best_labeled = 0;
 		long best_time = 0;
@@ -532,6 +692,9 @@ public class PFLPApp
 		String batch_solutions = null;
 		String batch_file = null;
 		int batch_retries = 1;
+		boolean tiled_run = false;
+		String tiled_output = null;
+		int tile_points = TiledLabeling.DEFAULT_TILE_POINTS;
 
 		if (args.length > 0)
 		{
@@ -545,9 +708,10 @@ public class PFLPApp
 		    	System.exit(1);
 		    }
 			
-			if (args[0].equals("--batch"))
+			if (args[0].equals("--batch") || args[0].equals("--tiled"))
 			{
-				batch_run = true;
+				batch_run = args[0].equals("--batch");
+				tiled_run = !batch_run;
 				if (args.length < 2)
 					usage();
 
@@ -573,6 +737,21 @@ public class PFLPApp
 					{
 						setOptionPointSelection(false);
 					}
+					else if (args[i].equals("--exact-postprocessing"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						try
+						{
+							setOptionExactPostprocessing(Long.valueOf(args[i]).longValue());
+						}
+						catch (Exception e)
+						{
+							usage();
+						}
+					}
 					else if (args[i].equals("--solutions"))
 					{
 						if (args.length <= i + 1)
@@ -587,24 +766,76 @@ public class PFLPApp
 							usage();
 
 						i++;
-						String alg = args[i];
-						if (alg.equals("fdl"))
-							batch_algorithm = algorithms[0];
-						else if (alg.equals("sa"))
-							batch_algorithm = algorithms[1];
-						else if (alg.equals("hirsch"))
-							batch_algorithm = algorithms[2];
-						else if (alg.equals("leftmost"))
-							batch_algorithm = algorithms[3];
-						else if (alg.equals("random"))
-							batch_algorithm = algorithms[4];
-						else if (alg.equals("fdlcu"))
+						batch_algorithm = findAlgorithm(args[i]);
+						if (batch_algorithm == null)
+							usage();
+					}
+					else if (args[i].equals("--positions"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						int model = CandidateModel.findModel(args[i]);
+						if (model < 0)
+							usage();
+
+						((SimulatedAnnealing) algorithms[1]).setPositionModel(model);
+					}
+					else if (args[i].equals("--far-field"))
+					{
+						((ForceDirectedLabeling) algorithms[0]).enableFarField();
+					}
+					else if (args[i].equals("--seed"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						try
 						{
-							batch_algorithm = algorithms[0];
-							((ForceDirectedLabeling)batch_algorithm).enableSimpleCleanup();
+							setSeed(Long.valueOf(args[i]).longValue());
 						}
-						else
+						catch (Exception e)
+						{
+							usage();
+						}
+					}
+					else if (args[i].equals("--schedule"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						int schedule = CoolingSchedule.findSchedule(args[i]);
+						if (schedule < 0)
 							usage();
+
+						((ForceDirectedLabeling) algorithms[0]).setCoolingSchedule(schedule);
+						((SimulatedAnnealing) algorithms[1]).setCoolingSchedule(schedule);
+					}
+					else if (tiled_run && args[i].equals("-o"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						tiled_output = args[i];
+					}
+					else if (tiled_run && args[i].equals("--tile-points"))
+					{
+						if (args.length <= i + 1)
+							usage();
+
+						i++;
+						try
+						{
+							tile_points = Integer.valueOf(args[i]).intValue();
+						}
+						catch (Exception e)
+						{
+							usage();
+						}
 					}
 					else
 						usage();
@@ -621,6 +852,17 @@ public class PFLPApp
 				System.exit(ec);
 			}
 
+			if (tiled_run)
+			{
+				if (tiled_output == null)
+					usage();
+
+				TiledLabeling tl = new TiledLabeling(batch_file, tiled_output, batch_algorithm);
+				tl.setTilePoints(tile_points);
+
+				System.exit(tl.execute() ? 0 : 1);
+			}
+
 			usage();
 		}
 		else
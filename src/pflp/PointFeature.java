@@ -36,6 +36,24 @@ public class PointFeature extends Object
 	static public final String DEFAULT_FONT = "Arial";
 	static public final int DEFAULT_FONT_SIZE = 16;
 
+	/**
+	 * lower bound for the weight of a label, so that features without
+	 * (or with a non-positive) priority can still be compared
+	 */
+	static public final double MIN_WEIGHT = 1e-3;
+
+	/**
+	 * in fixed point mode all coordinates are stored as multiples of
+	 * 1 / FIXED_POINT_SCALE, see setFixedPoint()
+	 */
+	static public final double FIXED_POINT_SCALE = 1 << 16;
+
+	/**
+	 * coordinates and sizes must be integers below this bound to use the
+	 * fixed point mode
+	 */
+	static public final double FIXED_POINT_LIMIT = 1 << 30;
+
 	/**
 	 * the x coordinate of the city
 	 */
@@ -53,7 +71,7 @@ public class PointFeature extends Object
 	 */
 	private double height = 0;
 	/**
-	 * the priority of this city (not yet used)
+	 * the priority of this city, see getWeight()
 	 */
 	private double priority = 0;
 	/**
@@ -68,6 +86,14 @@ public class PointFeature extends Object
 	 * the font size used to display the corresponding label
 	 */
 	private int fontsize = DEFAULT_FONT_SIZE;
+	/**
+	 * true <-> the fixed point coordinates are used
+	 */
+	private boolean fixed_point = false;
+	/**
+	 * the coordinates and the size of the label in fixed point representation
+	 */
+	private long fixed_x = 0, fixed_y = 0, fixed_width = 0, fixed_height = 0;
 
 	/**
 	 * constructs a new node with the given size and width
@@ -131,6 +157,86 @@ public class PointFeature extends Object
 		height = r.getHeight();
 	}
 
+	/**
+	 * @return the fixed point representation of d (rounded to the
+	 * nearest multiple of 1 / FIXED_POINT_SCALE)
+	 */
+	public static long toFixedPoint(double d)
+	{
+		return Math.round(d * FIXED_POINT_SCALE);
+	}
+
+	/**
+	 * @return true <-> the coordinates and the size of the label are
+	 * integers that can be represented in fixed point mode
+	 */
+	public boolean isIntegral()
+	{
+		return isIntegral(x) && isIntegral(y) && isIntegral(width) && isIntegral(height);
+	}
+
+	private static boolean isIntegral(double d)
+	{
+		return d == Math.rint(d) && Math.abs(d) < FIXED_POINT_LIMIT;
+	}
+
+	/**
+	 * enables or disables the fixed point mode. In this mode the offsets
+	 * of the labels are rounded to multiples of 1 / FIXED_POINT_SCALE
+	 * (see Label.moveTo()), so all label coordinates are represented
+	 * exactly and intersection tests are done on integers. The mode
+	 * should only be enabled for integral nodes (see isIntegral()) and
+	 * before the labels of the node are placed.
+	 */
+	public void setFixedPoint(boolean b)
+	{
+		fixed_point = b;
+		fixed_x = toFixedPoint(x);
+		fixed_y = toFixedPoint(y);
+		fixed_width = toFixedPoint(width);
+		fixed_height = toFixedPoint(height);
+	}
+
+	/**
+	 * @return true <-> the fixed point mode is enabled
+	 */
+	public boolean isFixedPoint()
+	{
+		return fixed_point;
+	}
+
+	/**
+	 * @return x-coordinate in fixed point representation
+	 */
+	public long getFixedX()
+	{
+		return fixed_x;
+	}
+
+	/**
+	 * @return y-coordinate in fixed point representation
+	 */
+	public long getFixedY()
+	{
+		return fixed_y;
+	}
+
+	/**
+	 * @return width of the label in fixed point representation
+	 */
+	public long getFixedWidth()
+	{
+		return fixed_width;
+	}
+
+	/**
+	 * @return height of the label in fixed point representation
+	 */
+	public long getFixedHeight()
+	{
+		return fixed_height;
+	}
+
 	/**
 	 * returns true if and only if the label can intersect in any location with the
 	 * label of the given node "node"
@@ -183,6 +289,16 @@ public class PointFeature extends Object
 		return priority;
 	}
 
+	/**
+	 * @return the weight of the label in the objective functions of
+	 * the algorithms, i.e. the cost of leaving it unlabeled. This is the
+	 * priority, but at least MIN_WEIGHT.
+	 */
+	public double getWeight()
+	{
+		return priority > MIN_WEIGHT ? priority : MIN_WEIGHT;
+	}
+
 	/**
 	 * @return Text for the label
 	 */
@@ -213,6 +329,7 @@ public class PointFeature extends Object
 	public void setX(double d)
 	{
 		x = d;
+		fixed_x = toFixedPoint(d);
 	}
 
 	/**
@@ -221,5 +338,6 @@ public class PointFeature extends Object
 	public void setY(double d)
 	{
 		y = d;
+		fixed_y = toFixedPoint(d);
 	}
 }
@@ -24,6 +24,12 @@ import java.util.*;
 import java.awt.*;
 import java.awt.geom.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
 import pflp.util.Semaphore;
 
@@ -46,27 +52,62 @@ public class Solution
 	//where to place the labels
 	private Label[] labels = null;
 
+	//grid used to find neighbours, created on demand for copied solutions
+	private NeighbourIndex neighbour_index = null;
+
+	//labels affected by changes of the instance since the last call to takeDirtyLabels()
+	private int[] dirty_labels = new int[16];
+	private int dirty_count = 0;
+
 	//A Semaphore to syncronice access to the labels
 	//between the visualization and the SearchThread(s)
 	private Semaphore sem = new Semaphore(1);
 
-	//static helper functions
-	private static double to_double(String s)
+	//size of the input buffer used to read solutions
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	//numbers with more digits are handed over to Double.parseDouble()
+	private static final int MAX_FAST_DIGITS = 15;
+
+	private static final double[] POWERS_OF_TEN = new double[MAX_FAST_DIGITS + 1];
+
+	static
 	{
-		try
-		{
-			return Double.valueOf(s).doubleValue();
-		}
-		catch (Exception e)
-		{
-			System.out.println("Failed to convert String \"" + s + "\" to double!");
-			return 0.0;
-		}
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_FAST_DIGITS; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	//size of the output buffer used by dumpSolution()
+	private static final int DUMP_BUFFER_SIZE = 1 << 16;
+
+	//values below this bound are written without going through Double.toString()
+	private static final long DUMP_FAST_FORMAT_LIMIT = 10000000L;
+
+	/**
+	 * appends the given value rounded like the solution format expects it
+	 * (the result of Math.round(d * 100) / 100, printed as a double).
+	 */
+	static void appendR100(StringBuilder sb, double d)
+	{
+		long v = Math.round(d * 100) / 100;
+
+		if (v > -DUMP_FAST_FORMAT_LIMIT && v < DUMP_FAST_FORMAT_LIMIT)
+			sb.append(v).append(".0");
+		else
+			sb.append((double) v);
 	}
 
-	private static double r100(double d)
+	/**
+	 * writes the remaining bytes of the buffer to the given channel and
+	 * clears the buffer
+	 */
+	static void flushBuffer(FileChannel channel, ByteBuffer buffer) throws IOException
 	{
-		return (Math.round(d * 100) / 100);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
 	}
 
 	public Solution(Instance inst)
@@ -101,6 +142,7 @@ public class Solution
 	/**
 	 * clones the given solution  
 	 * nodes store only static information, that's why they will not be cloned 
+	 * the neighbourhood relation is copied from s by index
 	 */
 	public Solution(Solution s)
 	{
@@ -110,7 +152,14 @@ public class Solution
 		for (int i = 0; i < s.getLabels().length; i++)
 			labels[i] = new Label((Label) s.getLabels()[i]);
 
-		setNeighbours();
+		for (int i = 0; i < labels.length; i++)
+		{
+			Vector n = s.labels[i].getNeighbours();
+			labels[i].getNeighbours().ensureCapacity(n.size());
+
+			for (int k = 0; k < n.size(); k++)
+				labels[i].addNeighbour(labels[((Label) n.get(k)).getIndex()]);
+		}
 	}
 
 	/**
@@ -124,61 +173,94 @@ public class Solution
 
 		try
 		{
-			r = new BufferedReader(new FileReader(file));
-			Vector dummy = new Vector();
-			Vector dummy_labels = new Vector();
-			int idx = -1;
-			int i_label = 0;
-
-			double x = 0, y = 0;
-			double lbl_width = 0, lbl_height = 0;
+			r = new BufferedReader(new FileReader(file), READ_BUFFER_SIZE);
+
+			int n = 0;
+			int capacity = 1024;
+			double[] x = new double[capacity];
+			double[] y = new double[capacity];
+			double[] lbl_width = new double[capacity];
+			double[] lbl_height = new double[capacity];
+			double[] tl_x = new double[capacity];
+			double[] tl_y = new double[capacity];
+			boolean[] is_unset = new boolean[capacity];
+			String[] text = new String[capacity];
+
 			double priority = 1;
 			int fontsize = 7;
-			String text = "";
 			String font = new String(PointFeature.DEFAULT_FONT);
 
+			//line format: (x,y) width height "text" (topleft_x,topleft_y) {0|1}
 			while ((line = r.readLine()) != null)
 			{
-				String[] splitted = line.split("[ (),]", -1);
+				if (n == capacity)
+				{
+					capacity *= 2;
+					x = Arrays.copyOf(x, capacity);
+					y = Arrays.copyOf(y, capacity);
+					lbl_width = Arrays.copyOf(lbl_width, capacity);
+					lbl_height = Arrays.copyOf(lbl_height, capacity);
+					tl_x = Arrays.copyOf(tl_x, capacity);
+					tl_y = Arrays.copyOf(tl_y, capacity);
+					is_unset = Arrays.copyOf(is_unset, capacity);
+					text = Arrays.copyOf(text, capacity);
+				}
+
+				//the text may contain any of the separators, so the fields
+				//behind it are parsed starting at the last quotation mark
+				int i1 = line.indexOf('"');
+				int i2 = line.lastIndexOf('"');
+				if (i1 < 0 || i2 <= i1)
+					throw new NumberFormatException(line);
+
+				int p = line.indexOf('(') + 1;
+				int q = line.indexOf(',', p);
+				x[n] = parseDouble(line, p, q);
 
-				x = to_double(splitted[1]);
-				y = to_double(splitted[2]);
+				p = q + 1;
+				q = line.indexOf(')', p);
+				y[n] = parseDouble(line, p, q);
 
-				lbl_width = to_double(splitted[4]);
-				lbl_height = to_double(splitted[5]);
+				p = q + 2;
+				q = line.indexOf(' ', p);
+				lbl_width[n] = parseDouble(line, p, q);
 
-				int i1 = line.indexOf("\"");
-				int i2 = line.lastIndexOf("\"");
-				text = line.substring(i1 + 1, i2);
+				p = q + 1;
+				q = line.indexOf(' ', p);
+				lbl_height[n] = parseDouble(line, p, q);
 
-				double tl_x = 0, tl_y = 0;
-				boolean is_unset = false;
+				text[n] = line.substring(i1 + 1, i2);
 
-				//Beistriche im Namen machen Probleme - muss schnell gehen - irgendwann besser machen
-				tl_x = to_double(splitted[splitted.length - 4]);
-				tl_y = to_double(splitted[splitted.length - 3]);
+				p = line.indexOf('(', i2) + 1;
+				q = line.indexOf(',', p);
+				tl_x[n] = parseDouble(line, p, q);
 
-				is_unset = splitted[splitted.length - 1].equals("0");
+				p = q + 1;
+				q = line.indexOf(')', p);
+				tl_y[n] = parseDouble(line, p, q);
+
+				is_unset[n] = line.length() == q + 3 && line.charAt(q + 2) == '0';
+				n++;
+			}
 
-				PointFeature new_node = new PointFeature(x, y, lbl_width, lbl_height, priority, text, font, fontsize);
-				Label dummy_label = new Label(new_node, i_label);
-				i_label++;
+			r.close();
 
-				dummy_label.moveTo(x - tl_x, y - tl_y);
-				dummy_label.setUnplacable(is_unset);
+			PointFeature[] nodes = new PointFeature[n];
+			for (int i = 0; i < n; i++)
+				nodes[i] = new PointFeature(x[i], y[i], lbl_width[i], lbl_height[i], priority, text[i], font, fontsize);
 
-				dummy.add(new_node);
-				dummy_labels.add(dummy_label);
+			labels = new Label[n];
+			for (int i = 0; i < n; i++)
+			{
+				labels[i] = new Label(nodes[i], i);
+				labels[i].moveTo(x[i] - tl_x[i], y[i] - tl_y[i]);
+				labels[i].setUnplacable(is_unset[i]);
 			}
 
-			Instance inst = new Instance(dummy, file);
+			Instance inst = new Instance(nodes, file);
 			PFLPApp.instance = inst;
 			instance = inst;
 
-			labels = new Label[dummy_labels.size()];
-			for (int i = 0; i < dummy_labels.size(); i++)
-				labels[i] = (Label) dummy_labels.get(i);
-
 			setNeighbours();
 		}
 		catch (FileNotFoundException e)
@@ -196,30 +278,268 @@ public class Solution
 		}
 	}
 
+	/**
+	 * parses the decimal number in s[begin, end). Numbers in the usual
+	 * "ddd.ddd" format are converted without creating temporary strings.
+	 */
+	static double parseDouble(String s, int begin, int end)
+	{
+		if (begin < 0 || end <= begin)
+			throw new NumberFormatException(s);
+
+		int i = begin;
+		boolean negative = false;
+		if (s.charAt(i) == '-')
+		{
+			negative = true;
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+
+		for (; i < end; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				if (++digits > MAX_FAST_DIGITS)
+					return Double.parseDouble(s.substring(begin, end));
+
+				mantissa = mantissa * 10 + (c - '0');
+				if (fraction)
+					scale++;
+			}
+			else if (c == '.' && !fraction)
+			{
+				fraction = true;
+			}
+			else //exponent or anything unusual
+			{
+				return Double.parseDouble(s.substring(begin, end));
+			}
+		}
+
+		if (digits == 0)
+			throw new NumberFormatException(s);
+
+		double d = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+		return negative ? -d : d;
+	}
+
+	/**
+	 * creates the list of neighbours for every label. Candidates are taken
+	 * from a {@link NeighbourIndex grid}, so only nearby labels are compared.
+	 */
 	private void setNeighbours()
 	{
+		PointFeature[] nodes = new PointFeature[labels.length];
+		for (int i = 0; i < labels.length; i++)
+			nodes[i] = labels[i].getNode();
+
+		NeighbourIndex index = new NeighbourIndex(nodes);
+		neighbour_index = index;
+
 		for (int i = 0; i < labels.length; i++)
 		{
 			Label current = labels[i];
 
 			//create a list of neighbours
-			for (int j = 0; j < labels.length; j++)
-			{
-				if (i != j)
-				{
-					if (current.getNode().canIntersect(labels[j].getNode()))
-						current.addNeighbour(labels[j]);
-				}
-			}
+			int n = index.query(nodes[i], i);
+			int[] found = index.getResult();
+
+			current.getNeighbours().ensureCapacity(n);
+			for (int k = 0; k < n; k++)
+				current.addNeighbour(labels[found[k]]);
+		}
+	}
+
+	/**
+	 * returns the grid of the current point features, it is created if
+	 * the solution has been copied from another one.
+	 */
+	private NeighbourIndex getNeighbourIndex()
+	{
+		if (neighbour_index == null)
+		{
+			PointFeature[] nodes = new PointFeature[labels.length];
+			for (int i = 0; i < labels.length; i++)
+				nodes[i] = labels[i].getNode();
+
+			neighbour_index = new NeighbourIndex(nodes);
+		}
+
+		return neighbour_index;
+	}
+
+	/**
+	 * adds label i to the lists of neighbours of all labels it can
+	 * intersect with and vice versa.
+	 */
+	private void linkNeighbours(int i)
+	{
+		NeighbourIndex index = getNeighbourIndex();
+		Label current = labels[i];
+
+		int n = index.query(current.getNode(), i);
+		int[] found = index.getResult();
+
+		for (int k = 0; k < n; k++)
+		{
+			current.addNeighbour(labels[found[k]]);
+			labels[found[k]].addNeighbour(current);
+		}
+	}
+
+	/**
+	 * removes label i from the lists of its neighbours and clears its
+	 * own list. All former neighbours are marked as dirty.
+	 */
+	private void unlinkNeighbours(int i)
+	{
+		Label current = labels[i];
+		Vector n = current.getNeighbours();
+
+		for (int k = 0; k < n.size(); k++)
+		{
+			Label l2 = (Label) n.get(k);
+			l2.getNeighbours().remove(current);
+			markDirty(l2.getIndex());
+		}
+
+		n.clear();
+	}
+
+	private void markDirty(int i)
+	{
+		if (dirty_count == dirty_labels.length)
+			dirty_labels = Arrays.copyOf(dirty_labels, 2 * dirty_count);
+
+		dirty_labels[dirty_count++] = i;
+	}
+
+	private void markNeighboursDirty(int i)
+	{
+		Vector n = labels[i].getNeighbours();
+		for (int k = 0; k < n.size(); k++)
+			markDirty(((Label) n.get(k)).getIndex());
+	}
+
+	/**
+	 * adds a new point feature to the instance and the solution. The
+	 * coordinates of p are expected in the coordinate system of the
+	 * input file. Only the labels close to p are compared.
+	 * @return the index of the new label
+	 */
+	public int addPointFeature(PointFeature p)
+	{
+		NeighbourIndex index = getNeighbourIndex();
+		int i = instance.addNode(p);
+
+		labels = Arrays.copyOf(labels, i + 1);
+		labels[i] = new Label(p, i);
+
+		index.insert(i, p);
+		linkNeighbours(i);
+
+		if (labels[i].hasNeighbours())
+			labels[i].findInitialPlacement(PFLPApp.createRandom());
+		else
+			labels[i].moveTo(0., 0.);
+
+		markDirty(i);
+		markNeighboursDirty(i);
+
+		return i;
+	}
+
+	/**
+	 * removes the point feature with the given index from the instance
+	 * and the solution. The last label takes over the index i.
+	 */
+	public void removePointFeature(int i)
+	{
+		NeighbourIndex index = getNeighbourIndex();
+		int last = labels.length - 1;
+
+		unlinkNeighbours(i);
+		index.remove(labels[i].getNode());
+
+		if (i != last)
+		{
+			labels[i] = labels[last];
+			labels[i].index = i;
+			index.renumber(labels[i].getNode(), i);
+		}
+
+		labels = Arrays.copyOf(labels, last);
+		instance.removeNode(i);
+
+		//fix the indices of the dirty labels
+		int k = 0;
+		for (int j = 0; j < dirty_count; j++)
+		{
+			if (dirty_labels[j] == i)
+				continue;
+
+			dirty_labels[k++] = dirty_labels[j] == last ? i : dirty_labels[j];
+		}
+		dirty_count = k;
+	}
+
+	/**
+	 * moves the point feature with the given index to (x, y), given in the
+	 * coordinate system of the input file. The label keeps its relative
+	 * position, the lists of neighbours are updated locally.
+	 */
+	public void movePointFeature(int i, double x, double y)
+	{
+		NeighbourIndex index = getNeighbourIndex();
+		PointFeature p = labels[i].getNode();
+
+		unlinkNeighbours(i);
+		index.remove(p);
+
+		instance.moveNode(i, x, y);
+
+		index.insert(i, p);
+		linkNeighbours(i);
+
+		markDirty(i);
+		markNeighboursDirty(i);
+	}
+
+	/**
+	 * returns the indices of all labels that have been affected by
+	 * changes of the instance (inserted or moved labels and the old and
+	 * new neighbours of changed labels) and resets the list.
+	 * @return sorted array of label indices without duplicates
+	 */
+	public int[] takeDirtyLabels()
+	{
+		Arrays.sort(dirty_labels, 0, dirty_count);
+
+		int n = 0;
+		for (int j = 0; j < dirty_count; j++)
+		{
+			if (n == 0 || dirty_labels[j] != dirty_labels[n - 1])
+				dirty_labels[n++] = dirty_labels[j];
 		}
+
+		dirty_count = 0;
+		return Arrays.copyOf(dirty_labels, n);
 	}
 
 	private void findInitialPlacement()
 	{
+		SplittableRandom random = PFLPApp.createRandom();
+
 		for (int i = 0; i < labels.length; i++)
 		{
 			if (labels[i].hasNeighbours())
-				labels[i].findInitialPlacement();
+				labels[i].findInitialPlacement(random);
 			else
 				labels[i].moveTo(0., 0.);
 		}
@@ -227,32 +547,104 @@ public class Solution
 
 	/**
 	 * Dumps the current solution in a predefined format to the given file.
+	 * The lines are assembled in a single reusable buffer and written through
+	 * a file channel, the overlapping state is computed once for all labels.
 	 */
 	public void dumpSolution(String filename) throws IOException
 	{
+		boolean[] overlapping = findOverlappingLabels();
+
+		FileOutputStream f = new FileOutputStream(filename);
+		FileChannel channel = f.getChannel();
+
 		try
 		{
-			FileWriter f = new FileWriter(filename);
-			String out = new String("");
+			ByteBuffer out = ByteBuffer.allocateDirect(DUMP_BUFFER_SIZE);
+			CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+			encoder.onMalformedInput(CodingErrorAction.REPLACE);
+			encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+			StringBuilder line = new StringBuilder(128);
+			CharBuffer in = null;
+
 			for (int i = 0; i < labels.length; i++)
 			{
 				Label l = labels[i];
 				PointFeature n = l.getNode();
-				out = "(" + r100(n.getX()) + "," + r100(n.getY()) + ") ";
-				out += r100(l.getWidth()) + " " + r100(l.getHeight()) + " ";
-				out += "\"" + n.getText() + "\" ";
-				out += "(" + r100(l.getTopleft().x) + "," + r100(l.getTopleft().y) + ") ";
-				out += (l.getUnplacable() || l.isOverlapping() ? "0" : "1");
-				out += "\n";
-				f.write(out);
+				double h_offset = l.getOffsetHorizontal();
+				double v_offset = l.getOffsetVertical();
+
+				line.setLength(0);
+				line.append('(');
+				appendR100(line, n.getX());
+				line.append(',');
+				appendR100(line, n.getY());
+				line.append(") ");
+				appendR100(line, l.getWidth());
+				line.append(' ');
+				appendR100(line, l.getHeight());
+				line.append(" \"").append(n.getText()).append("\" (");
+				appendR100(line, n.getX() - h_offset);
+				line.append(',');
+				appendR100(line, n.getY() - v_offset);
+				line.append(") ");
+				line.append(l.getUnplacable() || overlapping[i] ? '0' : '1');
+				line.append('\n');
+
+				in = CharBuffer.wrap(line);
+				while (encoder.encode(in, out, false).isOverflow())
+					flushBuffer(channel, out);
 			}
 
+			in = CharBuffer.allocate(0);
+			while (encoder.encode(in, out, true).isOverflow())
+				flushBuffer(channel, out);
+			while (encoder.flush(out).isOverflow())
+				flushBuffer(channel, out);
+
+			flushBuffer(channel, out);
+		}
+		finally
+		{
+			channel.close();
 			f.close();
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * determines for all labels whether they intersect with at least one of
+	 * their neighbours. Every pair of neighbours is tested only once.
+	 * @return array of flags, true <-> label i is placed and overlapping
+	 */
+	public boolean[] findOverlappingLabels()
+	{
+		boolean[] overlapping = new boolean[labels.length];
+
+		for (int i = 0; i < labels.length; i++)
 		{
-			throw (e);
+			Label l = labels[i];
+
+			if (l.getUnplacable())
+				continue;
+
+			Vector n = l.getNeighbours();
+			for (int k = 0; k < n.size(); k++)
+			{
+				Label l2 = (Label) n.get(k);
+				int j = l2.getIndex();
+
+				if (j <= i || l2.getUnplacable())
+					continue;
+
+				if (l.doesIntersect(l2))
+				{
+					overlapping[i] = true;
+					overlapping[j] = true;
+				}
+			}
 		}
+
+		return overlapping;
 	}
 
 	/**
@@ -340,10 +732,12 @@ public class Solution
 	 */
 	public int countLabeledCities()
 	{
+		boolean[] overlapping = findOverlappingLabels();
+
 		int set = 0;
 		for (int i = 0; i < labels.length; i++)
 		{
-			if (!labels[i].getUnplacable() && !labels[i].isOverlapping())
+			if (!labels[i].getUnplacable() && !overlapping[i])
 				set++;
 		}
 
@@ -0,0 +1,1039 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import pflp.search.SearchThread;
+
+/**
+ * Labels instances that don't fit into memory. The point features are
+ * read twice from the input file and sorted into rectangular tiles that
+ * are stored in temporary files. Every tile is labeled together with a
+ * halo of the surrounding points by one of the usual search algorithms.
+ * <br>
+ * The tiles adapt to the distribution of the points: the map is divided
+ * into rows and every row into columns at the quantiles of a random
+ * sample, so every tile contains about the same number of points. Apart
+ * from the bounds of the tiles (8 bytes per tile) the memory needed is
+ * that of a single tile with its halo and some buffers of fixed size.
+ * <br>
+ * Tiles are processed row by row. Labels of tiles that have already been
+ * processed are fixed. Algorithms that support regions (see
+ * SearchThread.labelRegion()) label the current tile around them, for
+ * the others they are restored after labeling the tile. Remaining
+ * conflicts with them are resolved for the labels of the current tile
+ * only. This way the seams between tiles never contain intersecting
+ * labels and only one tile and its halo are held in memory at any time.
+ * <br>
+ * Supported are the line based input formats (.lab and the benchmark
+ * format without extension). The solution is written in the usual
+ * format, but ordered by tiles.
+ */
+public class TiledLabeling
+{
+	/**
+	 * the number of points a tile should contain on average
+	 */
+	public static final int DEFAULT_TILE_POINTS = 5000;
+
+	//the points are collected in a buffer of this size and written to
+	//the files of their tiles, whenever it is full
+	private static final int DISTRIBUTE_BUFFER_SIZE = 1 << 23;
+
+	//maximal number of points sampled to find the bounds of the tiles
+	private static final int SAMPLE_SIZE = 1 << 20;
+
+	//size of the buffers used to read the tiles and to write the solution
+	private static final int INPUT_BUFFER_SIZE = 1 << 16;
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+	//x, y, width, height, priority, id, length of the text
+	private static final int RECORD_HEADER_SIZE = 5 * 8 + 8 + 4;
+
+	//horizontal offset, vertical offset, state
+	private static final int RESULT_SIZE = 2 * 8 + 1;
+
+	private static final byte STATE_UNPLACED = 0;
+	private static final byte STATE_PLACED = 1;
+	private static final byte STATE_OVERLAPPING = 2;
+
+	private static final Charset TEXT_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * the point features of a tile (and its halo)
+	 */
+	private static class TilePoints
+	{
+		int count = 0;
+		double[] x = new double[0];
+		double[] y = new double[0];
+		double[] width = new double[0];
+		double[] height = new double[0];
+		double[] priority = new double[0];
+		String[] text = new String[0];
+
+		//placement of points from already processed tiles
+		boolean[] fixed = new boolean[0];
+		double[] h_offset = new double[0];
+		double[] v_offset = new double[0];
+		byte[] state = new byte[0];
+
+		void clear()
+		{
+			Arrays.fill(text, 0, count, null);
+			count = 0;
+		}
+
+		void ensureCapacity(int n)
+		{
+			if (n <= x.length)
+				return;
+
+			n = Math.max(n, 2 * x.length);
+			x = Arrays.copyOf(x, n);
+			y = Arrays.copyOf(y, n);
+			width = Arrays.copyOf(width, n);
+			height = Arrays.copyOf(height, n);
+			priority = Arrays.copyOf(priority, n);
+			text = Arrays.copyOf(text, n);
+			fixed = Arrays.copyOf(fixed, n);
+			h_offset = Arrays.copyOf(h_offset, n);
+			v_offset = Arrays.copyOf(v_offset, n);
+			state = Arrays.copyOf(state, n);
+		}
+	}
+
+	/**
+	 * reads point features from one of the line based input formats
+	 */
+	private static class PointReader
+	{
+		private BufferedReader r = null;
+		private boolean lab_format = false;
+
+		private double def_lbl_width = 100, def_lbl_height = 100;
+		private int cnt = 0;
+
+		double x = 0, y = 0, width = 0, height = 0, priority = 1;
+		String text = null;
+
+		PointReader(String file) throws IOException
+		{
+			lab_format = file.endsWith(".lab");
+			r = new BufferedReader(new FileReader(file), 1 << 16);
+		}
+
+		/**
+		 * reads the next point feature
+		 * @return false <-> end of file
+		 */
+		boolean next() throws IOException
+		{
+			String line = null;
+
+			while ((line = r.readLine()) != null)
+			{
+				if (lab_format)
+				{
+					//(x,y) width height "text"
+					int p = line.indexOf('(') + 1;
+					int q = line.indexOf(',', p);
+					x = Solution.parseDouble(line, p, q);
+
+					p = q + 1;
+					q = line.indexOf(')', p);
+					y = Solution.parseDouble(line, p, q);
+
+					p = q + 2;
+					q = line.indexOf(' ', p);
+					width = Solution.parseDouble(line, p, q);
+
+					p = q + 1;
+					q = line.indexOf(' ', p);
+					height = Solution.parseDouble(line, p, q);
+
+					int i1 = line.indexOf('"');
+					int i2 = line.lastIndexOf('"');
+					text = line.substring(i1 + 1, i2);
+					cnt++;
+					return true;
+				}
+
+				if (line.length() == 0)
+					continue;
+
+				if (line.charAt(0) == '%')
+				{
+					if (line.length() > 11 && line.substring(1, 10).compareTo("Labelsize") == 0)
+					{
+						String tmp = line.substring(12).trim();
+						int idx = tmp.indexOf(" ");
+
+						if (idx != -1)
+						{
+							def_lbl_width = Double.parseDouble(tmp.substring(0, idx));
+							def_lbl_height = Double.parseDouble(tmp.substring(idx + 1));
+						}
+					}
+					continue;
+				}
+
+				//x y [width height]
+				int q = line.indexOf(' ');
+				x = Solution.parseDouble(line, 0, q);
+
+				int p = q + 1;
+				q = end(line, line.indexOf(' ', p));
+				y = Solution.parseDouble(line, p, q);
+
+				if (q < line.length())
+				{
+					p = q + 1;
+					q = line.indexOf(' ', p);
+					width = Solution.parseDouble(line, p, q);
+
+					p = q + 1;
+					q = end(line, line.indexOf(' ', p));
+					height = Solution.parseDouble(line, p, q);
+				}
+				else
+				{
+					width = def_lbl_width;
+					height = def_lbl_height;
+				}
+
+				text = "L" + (cnt++);
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * @return the end of the field ending at separator q (-1 <-> end of line)
+		 */
+		private static int end(String line, int q)
+		{
+			return q < 0 ? line.length() : q;
+		}
+
+		void close() throws IOException
+		{
+			r.close();
+		}
+	}
+
+	/**
+	 * reads a temporary file sequentially through a buffer of fixed size
+	 */
+	private static class RecordReader
+	{
+		private FileInputStream in = null;
+		private FileChannel channel = null;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+
+		void open(File f) throws IOException
+		{
+			in = new FileInputStream(f);
+			channel = in.getChannel();
+			buffer.clear();
+			buffer.flip();
+		}
+
+		/**
+		 * reads until at least n bytes (n <= INPUT_BUFFER_SIZE) are buffered
+		 * @return false <-> end of file
+		 */
+		private boolean fill(int n) throws IOException
+		{
+			if (buffer.remaining() >= n)
+				return true;
+
+			buffer.compact();
+			while (buffer.position() < n && channel.read(buffer) != -1)
+				;
+			buffer.flip();
+
+			return buffer.remaining() >= n;
+		}
+
+		/**
+		 * @return the buffer containing at least the next n bytes
+		 */
+		ByteBuffer next(int n) throws IOException
+		{
+			if (!fill(n))
+				throw new EOFException("truncated temporary file");
+
+			return buffer;
+		}
+
+		boolean hasRemaining() throws IOException
+		{
+			return fill(1);
+		}
+
+		void get(byte[] dst, int len) throws IOException
+		{
+			for (int off = 0; off < len; )
+			{
+				int k = Math.min(len - off, next(1).remaining());
+				buffer.get(dst, off, k);
+				off += k;
+			}
+		}
+
+		void skip(int len) throws IOException
+		{
+			while (len > 0)
+			{
+				int k = Math.min(len, next(1).remaining());
+				buffer.position(buffer.position() + k);
+				len -= k;
+			}
+		}
+
+		void close() throws IOException
+		{
+			if (in != null)
+				in.close();
+
+			in = null;
+			channel = null;
+		}
+	}
+
+	private String input_file = null;
+	private String output_file = null;
+	private SearchThread algorithm = null;
+	private int tile_points = DEFAULT_TILE_POINTS;
+	private File tmp_dir = null;
+
+	private long count = 0;
+	private double min_x = 0, min_y = 0, max_x = 0, max_y = 0;
+	private double max_width = 0, max_height = 0;
+
+	//offset applied to all coordinates of the solution, see Instance.adjust_coordinates()
+	private double offset_x = 0, offset_y = 0;
+
+	//the sampled points, see scanInput(). Single precision suffices for the bounds
+	private float[] sample_x = null, sample_y = null;
+	private int sample_count = 0;
+
+	//row r contains the points with row_bounds[r - 1] <= y < row_bounds[r],
+	//column c of row r the ones with column_bounds[r][c - 1] <= x < column_bounds[r][c]
+	private int columns = 1, rows = 1;
+	private double[] row_bounds = null;
+	private double[][] column_bounds = null;
+	private double halo_width = 0, halo_height = 0;
+
+	private TilePoints points = new TilePoints();
+	private RecordReader tile_reader = new RecordReader();
+	private RecordReader result_reader = new RecordReader();
+
+	/**
+	 * @param input the input file (.lab or benchmark format)
+	 * @param output the solution file
+	 * @param alg the algorithm that labels the single tiles
+	 */
+	public TiledLabeling(String input, String output, SearchThread alg)
+	{
+		input_file = input;
+		output_file = output;
+		algorithm = alg;
+	}
+
+	/**
+	 * sets the average number of points per tile
+	 */
+	public void setTilePoints(int n)
+	{
+		tile_points = Math.max(1, n);
+	}
+
+	/**
+	 * runs all passes
+	 * @return true <-> the solution has been written successfully
+	 */
+	public boolean execute()
+	{
+		if (!input_file.endsWith(".lab") && input_file.indexOf('.', input_file.lastIndexOf(File.separatorChar) + 1) != -1)
+		{
+			System.out.println("tiled labeling supports only .lab and benchmark files");
+			return false;
+		}
+
+		try
+		{
+			tmp_dir = java.nio.file.Files.createTempDirectory("pflp-tiles").toFile();
+
+			System.out.println("scanning " + input_file + "...");
+			scanInput();
+			if (count == 0)
+			{
+				System.out.println("no labels found in " + input_file);
+				return false;
+			}
+
+			System.out.println(count + " labels, " + columns + "x" + rows + " tiles");
+
+			System.out.println("distributing points to tiles...");
+			distributePoints();
+
+			for (int r = 0; r < rows; r++)
+			{
+				for (int c = 0; c < columns; c++)
+					labelTile(c, r);
+
+				System.out.println("row " + (r + 1) + " of " + rows + " done");
+			}
+
+			System.out.println("writing " + output_file + "...");
+			writeSolution();
+
+			return true;
+		}
+		catch (NumberFormatException e)
+		{
+			System.out.println("invalid file format!");
+		}
+		catch (IOException e)
+		{
+			System.out.println("tiled labeling failed: " + e.getMessage());
+		}
+		finally
+		{
+			deleteTemporaryFiles();
+		}
+
+		return false;
+	}
+
+	/**
+	 * first pass: determines the number of points, the bounding box
+	 * and the size of the tiles
+	 */
+	private void scanInput() throws IOException
+	{
+		PointReader pr = new PointReader(input_file);
+
+		min_x = min_y = offset_x = offset_y = Double.MAX_VALUE;
+		max_x = max_y = -Double.MAX_VALUE;
+
+		//a uniform sample of at most SAMPLE_SIZE points (reservoir sampling)
+		SplittableRandom random = PFLPApp.createRandom();
+		sample_x = new float[1024];
+		sample_y = new float[1024];
+		sample_count = 0;
+
+		try
+		{
+			while (pr.next())
+			{
+				count++;
+
+				int k = sample_count;
+				if (sample_count == SAMPLE_SIZE)
+				{
+					long j = random.nextLong(count);
+					k = j < SAMPLE_SIZE ? (int) j : -1;
+				}
+				else if (sample_count == sample_x.length)
+				{
+					sample_x = Arrays.copyOf(sample_x, Math.min(2 * sample_count, SAMPLE_SIZE));
+					sample_y = Arrays.copyOf(sample_y, Math.min(2 * sample_count, SAMPLE_SIZE));
+				}
+
+				if (k >= 0)
+				{
+					sample_x[k] = (float) pr.x;
+					sample_y[k] = (float) pr.y;
+					sample_count = Math.max(sample_count, k + 1);
+				}
+
+				min_x = Math.min(min_x, pr.x);
+				min_y = Math.min(min_y, pr.y);
+				max_x = Math.max(max_x, pr.x);
+				max_y = Math.max(max_y, pr.y);
+
+				max_width = Math.max(max_width, pr.width);
+				max_height = Math.max(max_height, pr.height);
+
+				offset_x = Math.min(offset_x, pr.x - pr.width);
+				offset_y = Math.min(offset_y, pr.y - pr.height);
+			}
+		}
+		finally
+		{
+			pr.close();
+		}
+
+		offset_x = -offset_x;
+		offset_y = -offset_y;
+
+		//labels of points farther apart than the halo can't intersect
+		halo_width = 2 * max_width;
+		halo_height = 2 * max_height;
+
+		//about square tiles
+		double w = Math.max(max_x - min_x, 1e-6);
+		double h = Math.max(max_y - min_y, 1e-6);
+		double tiles = Math.min(Math.ceil((double) count / tile_points), Integer.MAX_VALUE / 2);
+
+		rows = (int) Math.max(1, Math.min(Math.round(Math.sqrt(tiles * h / w)), tiles));
+		columns = (int) Math.max(1, Math.ceil(tiles / rows));
+
+		computeTileBounds();
+
+		sample_x = sample_y = null;
+	}
+
+	/**
+	 * divides the sample into rows of equal size and every row into
+	 * columns of equal size
+	 */
+	private void computeTileBounds()
+	{
+		float[] ys = Arrays.copyOf(sample_y, sample_count);
+		Arrays.sort(ys);
+		row_bounds = quantiles(ys, sample_count, rows, min_y, max_y);
+
+		//the sampled x-coordinates of every row
+		int[] row_count = new int[rows];
+		int[] sample_row = new int[sample_count];
+		for (int k = 0; k < sample_count; k++)
+		{
+			sample_row[k] = find(row_bounds, sample_y[k]);
+			row_count[sample_row[k]]++;
+		}
+
+		float[][] xs = new float[rows][];
+		for (int r = 0; r < rows; r++)
+			xs[r] = new float[row_count[r]];
+
+		Arrays.fill(row_count, 0);
+		for (int k = 0; k < sample_count; k++)
+		{
+			int r = sample_row[k];
+			xs[r][row_count[r]++] = sample_x[k];
+		}
+
+		column_bounds = new double[rows][];
+		for (int r = 0; r < rows; r++)
+		{
+			Arrays.sort(xs[r]);
+			column_bounds[r] = quantiles(xs[r], xs[r].length, columns, min_x, max_x);
+			xs[r] = null;
+		}
+	}
+
+	/**
+	 * returns the n - 1 inner bounds that divide the sorted values v[0..m-1]
+	 * into n parts of equal size. Without values [min, max] is divided
+	 * into n intervals of equal length.
+	 */
+	private static double[] quantiles(float[] v, int m, int n, double min, double max)
+	{
+		double[] bounds = new double[n - 1];
+		for (int k = 1; k < n; k++)
+		{
+			if (m > 0)
+				bounds[k - 1] = v[(int) ((long) k * m / n)];
+			else
+				bounds[k - 1] = min + (max - min) * k / n;
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return the number of bounds <= d, i.e. the interval containing d
+	 */
+	private static int find(double[] bounds, double d)
+	{
+		int lo = 0, hi = bounds.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (bounds[mid] <= d)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private int row(double y)
+	{
+		return find(row_bounds, y);
+	}
+
+	private int column(int r, double x)
+	{
+		return find(column_bounds[r], x);
+	}
+
+	private int tile(double x, double y)
+	{
+		int r = row(y);
+		return r * columns + column(r, x);
+	}
+
+	private File pointFile(int t)
+	{
+		return new File(tmp_dir, "tile" + t + ".pts");
+	}
+
+	private File resultFile(int t)
+	{
+		return new File(tmp_dir, "tile" + t + ".res");
+	}
+
+	/**
+	 * appends the content of the buffer to the given file
+	 */
+	private static void appendToFile(File f, ByteBuffer buffer) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(f, true);
+		try
+		{
+			Solution.flushBuffer(out.getChannel(), buffer);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * second pass: stores every point in the file of its tile. The points
+	 * are collected in one buffer of fixed size, sorted by tiles and
+	 * appended to the files of the tiles whenever the buffer is full.
+	 */
+	private void distributePoints() throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(DISTRIBUTE_BUFFER_SIZE);
+		ByteBuffer sorted = ByteBuffer.allocate(DISTRIBUTE_BUFFER_SIZE);
+
+		//tile << 32 | position of every record in the buffer
+		long[] records = new long[DISTRIBUTE_BUFFER_SIZE / RECORD_HEADER_SIZE];
+		int nRecords = 0;
+
+		PointReader pr = new PointReader(input_file);
+		long id = 0;
+
+		try
+		{
+			while (pr.next())
+			{
+				int t = tile(pr.x, pr.y);
+				byte[] text = pr.text.getBytes(TEXT_CHARSET);
+				int size = RECORD_HEADER_SIZE + text.length;
+
+				ByteBuffer b = buffer;
+				if (b.remaining() < size)
+				{
+					flushRecords(buffer, sorted, records, nRecords);
+					nRecords = 0;
+
+					if (b.remaining() < size) //very long text
+						b = ByteBuffer.allocate(size);
+				}
+
+				if (b == buffer)
+					records[nRecords++] = (long) t << 32 | b.position();
+
+				b.putDouble(pr.x).putDouble(pr.y);
+				b.putDouble(pr.width).putDouble(pr.height);
+				b.putDouble(pr.priority).putLong(id++);
+				b.putInt(text.length).put(text);
+
+				if (b != buffer)
+					appendToFile(pointFile(t), b);
+			}
+		}
+		finally
+		{
+			pr.close();
+		}
+
+		flushRecords(buffer, sorted, records, nRecords);
+	}
+
+	/**
+	 * appends the records of the buffer to the files of their tiles and
+	 * clears the buffer
+	 * @param sorted a buffer of the same size used to group the records
+	 * @param records tile << 32 | position of the records in the buffer
+	 */
+	private void flushRecords(ByteBuffer buffer, ByteBuffer sorted, long[] records, int n) throws IOException
+	{
+		//records of the same tile stay in their original order
+		Arrays.sort(records, 0, n);
+
+		int k = 0;
+		while (k < n)
+		{
+			int t = (int) (records[k] >>> 32);
+
+			sorted.clear();
+			for (; k < n && (int) (records[k] >>> 32) == t; k++)
+			{
+				int pos = (int) records[k];
+				int size = RECORD_HEADER_SIZE + buffer.getInt(pos + RECORD_HEADER_SIZE - 4);
+
+				ByteBuffer record = buffer.duplicate();
+				record.limit(pos + size);
+				record.position(pos);
+				sorted.put(record);
+			}
+
+			appendToFile(pointFile(t), sorted);
+		}
+
+		buffer.clear();
+	}
+
+	/**
+	 * appends all points of tile t inside the given rectangle to p. If
+	 * the tile has already been processed, the placements are read as well.
+	 */
+	private void readTile(int t, TilePoints p, double x0, double y0, double x1, double y1) throws IOException
+	{
+		File f = pointFile(t);
+		if (!f.exists())
+			return;
+
+		boolean fixed = resultFile(t).exists();
+
+		tile_reader.open(f);
+		try
+		{
+			if (fixed)
+				result_reader.open(resultFile(t));
+
+			readRecords(p, fixed, x0, y0, x1, y1);
+		}
+		finally
+		{
+			tile_reader.close();
+			result_reader.close();
+		}
+	}
+
+	/**
+	 * reads the records of the opened tile, see readTile()
+	 */
+	private void readRecords(TilePoints p, boolean fixed, double x0, double y0, double x1, double y1) throws IOException
+	{
+		byte[] bytes = new byte[64];
+
+		while (tile_reader.hasRemaining())
+		{
+			ByteBuffer in = tile_reader.next(RECORD_HEADER_SIZE);
+			double x = in.getDouble();
+			double y = in.getDouble();
+			double w = in.getDouble();
+			double h = in.getDouble();
+			double priority = in.getDouble();
+			in.getLong(); //id
+			int len = in.getInt();
+
+			double h_offset = 0, v_offset = 0;
+			byte state = STATE_UNPLACED;
+			if (fixed)
+			{
+				ByteBuffer res = result_reader.next(RESULT_SIZE);
+				h_offset = res.getDouble();
+				v_offset = res.getDouble();
+				state = res.get();
+			}
+
+			if (x < x0 || x > x1 || y < y0 || y > y1)
+			{
+				tile_reader.skip(len);
+				continue;
+			}
+
+			if (bytes.length < len)
+				bytes = new byte[len];
+			tile_reader.get(bytes, len);
+
+			int i = p.count;
+			p.ensureCapacity(i + 1);
+			p.x[i] = x;
+			p.y[i] = y;
+			p.width[i] = w;
+			p.height[i] = h;
+			p.priority[i] = priority;
+			p.text[i] = new String(bytes, 0, len, TEXT_CHARSET);
+			p.fixed[i] = fixed;
+			p.h_offset[i] = h_offset;
+			p.v_offset[i] = v_offset;
+			p.state[i] = state;
+			p.count++;
+		}
+	}
+
+	/**
+	 * labels the points of a single tile together with its halo
+	 */
+	private void labelTile(int c, int r) throws IOException
+	{
+		int t = r * columns + c;
+
+		points.clear();
+		readTile(t, points, -Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+
+		int n_core = points.count;
+		if (n_core == 0)
+			return;
+
+		//collect the halo from all tiles within the halo distance
+		double x0 = (c > 0 ? column_bounds[r][c - 1] : min_x) - halo_width;
+		double y0 = (r > 0 ? row_bounds[r - 1] : min_y) - halo_height;
+		double x1 = (c < columns - 1 ? column_bounds[r][c] : max_x) + halo_width;
+		double y1 = (r < rows - 1 ? row_bounds[r] : max_y) + halo_height;
+
+		for (int r2 = row(y0); r2 <= row(y1); r2++)
+		{
+			for (int c2 = column(r2, x0); c2 <= column(r2, x1); c2++)
+			{
+				if (c2 != c || r2 != r)
+					readTile(r2 * columns + c2, points, x0, y0, x1, y1);
+			}
+		}
+
+		int n = points.count;
+		PointFeature[] nodes = new PointFeature[n];
+		String font = new String(PointFeature.DEFAULT_FONT);
+		for (int i = 0; i < n; i++)
+			nodes[i] = new PointFeature(points.x[i], points.y[i], points.width[i], points.height[i], points.priority[i], points.text[i], font, 7);
+
+		PFLPApp.instance = new Instance(nodes, input_file + " [tile " + c + "," + r + "]");
+
+		Solution sol = new Solution(PFLPApp.instance);
+		Label[] labels = sol.getLabels();
+		fixHalo(labels, n_core);
+
+		//the halo of unprocessed tiles is labeled as well, so the
+		//current tile leaves room for it
+		boolean[] region = new boolean[n];
+		for (int i = 0; i < n; i++)
+			region[i] = i < n_core || !points.fixed[i];
+
+		PFLPApp.solution = sol;
+		if (!algorithm.labelRegion(sol, region))
+		{
+			//the halo is moved by the algorithm and restored afterwards
+			PFLPApp.solution = null;
+
+			algorithm.batchRun();
+
+			sol = PFLPApp.solution;
+			if (sol == null || sol.getInstance() != PFLPApp.instance)
+				sol = new Solution(PFLPApp.instance);
+
+			labels = sol.getLabels();
+			fixHalo(labels, n_core);
+		}
+
+		//the remaining halo is labeled later on
+		for (int i = n_core; i < n; i++)
+		{
+			if (!points.fixed[i])
+				labels[i].setUnplacable(true);
+		}
+
+		//resolve conflicts at the seams
+		for (int i = 0; i < n_core; i++)
+		{
+			Label l = labels[i];
+			if (!l.getUnplacable() && intersectsFixed(l, n_core))
+				moveToFreePosition(l);
+		}
+
+		//and within the tile
+		if (PFLPApp.getOptionPointSelection())
+		{
+			int[] core = new int[n_core];
+			for (int i = 0; i < n_core; i++)
+				core[i] = i;
+
+			algorithm.cleanupSolution(sol, core);
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(n_core * RESULT_SIZE);
+		for (int i = 0; i < n_core; i++)
+		{
+			Label l = labels[i];
+			byte state = STATE_PLACED;
+
+			if (l.getUnplacable())
+				state = STATE_UNPLACED;
+			else if (l.isOverlapping())
+				state = STATE_OVERLAPPING;
+
+			out.putDouble(l.getOffsetHorizontal());
+			out.putDouble(l.getOffsetVertical());
+			out.put(state);
+		}
+
+		appendToFile(resultFile(t), out);
+
+		PFLPApp.solution = null;
+		PFLPApp.instance = null;
+	}
+
+	/**
+	 * restores the placement of the labels of processed tiles
+	 */
+	private void fixHalo(Label[] labels, int n_core)
+	{
+		for (int i = n_core; i < points.count; i++)
+		{
+			if (points.fixed[i])
+			{
+				labels[i].moveTo(points.h_offset[i], points.v_offset[i]);
+				labels[i].setUnplacable(points.state[i] == STATE_UNPLACED);
+			}
+		}
+	}
+
+	/**
+	 * true <-> l intersects a placed label of an already processed tile
+	 */
+	private static boolean intersectsFixed(Label l, int n_core)
+	{
+		java.util.Iterator it = l.getNeighbours().iterator();
+		while (it.hasNext())
+		{
+			Label l2 = (Label) it.next();
+			if (l2.getIndex() >= n_core && !l2.getUnplacable() && l.doesIntersect(l2))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * moves the label to a corner position without intersections
+	 * or removes it, if there is no such position
+	 */
+	private static void moveToFreePosition(Label l)
+	{
+		for (int pos = Label.TOPLEFT; pos <= Label.BOTTOMRIGHT; pos++)
+		{
+			l.moveTo(pos);
+			if (!l.isOverlapping())
+				return;
+		}
+
+		l.setUnplacable(true);
+	}
+
+	/**
+	 * last pass: writes the solution tile by tile
+	 */
+	private void writeSolution() throws IOException
+	{
+		FileOutputStream f = new FileOutputStream(output_file);
+		FileChannel channel = f.getChannel();
+
+		try
+		{
+			ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+			CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+			encoder.onMalformedInput(CodingErrorAction.REPLACE);
+			encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+			StringBuilder line = new StringBuilder(128);
+			CharBuffer in = null;
+
+			for (int t = 0; t < columns * rows; t++)
+			{
+				points.clear();
+				readTile(t, points, -Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+
+				for (int i = 0; i < points.count; i++)
+				{
+					double x = points.x[i] + offset_x;
+					double y = points.y[i] + offset_y;
+
+					line.setLength(0);
+					line.append('(');
+					Solution.appendR100(line, x);
+					line.append(',');
+					Solution.appendR100(line, y);
+					line.append(") ");
+					Solution.appendR100(line, points.width[i]);
+					line.append(' ');
+					Solution.appendR100(line, points.height[i]);
+					line.append(" \"").append(points.text[i]).append("\" (");
+					Solution.appendR100(line, x - points.h_offset[i]);
+					line.append(',');
+					Solution.appendR100(line, y - points.v_offset[i]);
+					line.append(") ");
+					line.append(points.state[i] == STATE_PLACED ? '1' : '0');
+					line.append('\n');
+
+					in = CharBuffer.wrap(line);
+					while (encoder.encode(in, out, false).isOverflow())
+						Solution.flushBuffer(channel, out);
+				}
+			}
+
+			in = CharBuffer.allocate(0);
+			while (encoder.encode(in, out, true).isOverflow())
+				Solution.flushBuffer(channel, out);
+			while (encoder.flush(out).isOverflow())
+				Solution.flushBuffer(channel, out);
+
+			Solution.flushBuffer(channel, out);
+		}
+		finally
+		{
+			channel.close();
+			f.close();
+		}
+	}
+
+	private void deleteTemporaryFiles()
+	{
+		if (tmp_dir == null)
+			return;
+
+		File[] files = tmp_dir.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+
+		tmp_dir.delete();
+		tmp_dir = null;
+	}
+}
@@ -0,0 +1,420 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.search;
+
+import java.util.Vector;
+
+import pflp.Label;
+import pflp.Solution;
+
+/**
+ * A fixed set of K candidate positions for every label together with
+ * the conflicts between the positions of neighbouring labels. The
+ * neighbours of each label are stored in one array (in the order of
+ * Label.getNeighbours()), every entry e has a bitset for each position
+ * i of the label: bit j is set <-> position i intersects position j of
+ * the neighbour. This way a conflict test is a table lookup.
+ * <br>
+ * The positions are numbered 0..K-1. The corners come first (in the
+ * order TOPLEFT, TOPRIGHT, BOTTOMLEFT, BOTTOMRIGHT), the slider models
+ * are discretized into SLIDER_STEPS steps per edge.
+ * <br>
+ * The model can be restricted to a region of the solution. Its labels
+ * are numbered 0..n-1 (local indices) and the labels outside the region
+ * are fixed obstacles: they are represented by the pseudo label n, which
+ * stays at position 0, and the conflicts of an entry with such a label
+ * describe the intersections with its current placement.
+ */
+public class CandidateModel
+{
+	//the four corners
+	public static final int FOUR_POSITION = 0;
+
+	//the four corners and the centers of the four edges
+	public static final int EIGHT_POSITION = 1;
+
+	//the lower edge of the label slides along the point
+	public static final int ONE_SLIDER = 2;
+
+	//any edge of the label slides along the point
+	public static final int FOUR_SLIDER = 3;
+
+	//the command line names of the models
+	private static final String[] MODEL_NAMES = { "4pos", "8pos", "1slider", "4slider" };
+
+	//number of intervals each edge of a slider model is divided into
+	public static final int SLIDER_STEPS = 4;
+
+	//pseudo positions, see getPosition()
+	public static final int UNPLACED = -1;
+	public static final int OTHER = -2;
+
+	//the offsets of the positions relative to the size of the label
+	private static final double[][] FACTORS_HORIZONTAL = new double[MODEL_NAMES.length][];
+	private static final double[][] FACTORS_VERTICAL = new double[MODEL_NAMES.length][];
+
+	static
+	{
+		FACTORS_HORIZONTAL[FOUR_POSITION] = new double[] { 1, 0, 1, 0 };
+		FACTORS_VERTICAL[FOUR_POSITION] = new double[] { 1, 1, 0, 0 };
+
+		FACTORS_HORIZONTAL[EIGHT_POSITION] = new double[] { 1, 0, 1, 0, .5, 0, .5, 1 };
+		FACTORS_VERTICAL[EIGHT_POSITION] = new double[] { 1, 1, 0, 0, 1, .5, 0, .5 };
+
+		int m = SLIDER_STEPS - 1;
+
+		//TOPLEFT, TOPRIGHT and the positions in between
+		FACTORS_HORIZONTAL[ONE_SLIDER] = new double[2 + m];
+		FACTORS_VERTICAL[ONE_SLIDER] = new double[2 + m];
+		FACTORS_HORIZONTAL[ONE_SLIDER][0] = 1;
+		FACTORS_VERTICAL[ONE_SLIDER][0] = 1;
+		FACTORS_HORIZONTAL[ONE_SLIDER][1] = 0;
+		FACTORS_VERTICAL[ONE_SLIDER][1] = 1;
+
+		//the four corners and the inner positions of each edge
+		FACTORS_HORIZONTAL[FOUR_SLIDER] = new double[4 + 4 * m];
+		FACTORS_VERTICAL[FOUR_SLIDER] = new double[4 + 4 * m];
+		System.arraycopy(FACTORS_HORIZONTAL[FOUR_POSITION], 0, FACTORS_HORIZONTAL[FOUR_SLIDER], 0, 4);
+		System.arraycopy(FACTORS_VERTICAL[FOUR_POSITION], 0, FACTORS_VERTICAL[FOUR_SLIDER], 0, 4);
+
+		for (int k = 1; k < SLIDER_STEPS; k++)
+		{
+			double f = (double) k / SLIDER_STEPS;
+
+			FACTORS_HORIZONTAL[ONE_SLIDER][1 + k] = f;
+			FACTORS_VERTICAL[ONE_SLIDER][1 + k] = 1;
+
+			//the point is on the lower, upper, left and right edge of the label
+			FACTORS_HORIZONTAL[FOUR_SLIDER][3 + k] = f;
+			FACTORS_VERTICAL[FOUR_SLIDER][3 + k] = 1;
+			FACTORS_HORIZONTAL[FOUR_SLIDER][3 + m + k] = f;
+			FACTORS_VERTICAL[FOUR_SLIDER][3 + m + k] = 0;
+			FACTORS_HORIZONTAL[FOUR_SLIDER][3 + 2 * m + k] = 0;
+			FACTORS_VERTICAL[FOUR_SLIDER][3 + 2 * m + k] = f;
+			FACTORS_HORIZONTAL[FOUR_SLIDER][3 + 3 * m + k] = 1;
+			FACTORS_VERTICAL[FOUR_SLIDER][3 + 3 * m + k] = f;
+		}
+	}
+
+	private int model = FOUR_POSITION;
+	private int positions = 0;
+
+	private Label[] labels = null;
+
+	//the labels of the region (null <-> all labels) and their number
+	private int[] member = null;
+	private int size = 0;
+
+	//the offsets of the positions of the model relative to the size of the label
+	private double[] factors_h = null, factors_v = null;
+
+	//the neighbours of label i are stored in neighbour[first[i]..first[i + 1] - 1]
+	private int[] first = null;
+	private int[] neighbour = null;
+
+	//the conflicts of entry e at position k are stored at e * K + k
+	private long[] conflicts = null;
+
+	/**
+	 * creates the candidate positions for the labels of the given
+	 * solution and the conflicts between them
+	 * @param s the solution
+	 * @param m the model (FOUR_POSITION, EIGHT_POSITION, ONE_SLIDER, FOUR_SLIDER)
+	 * @param members the indices of the labels of the region in ascending
+	 * order (null <-> all labels)
+	 * @param local the local index of every label of the region, -1 for
+	 * the others (not used if members is null)
+	 */
+	public CandidateModel(Solution s, int m, int[] members, int[] local)
+	{
+		model = m;
+		positions = FACTORS_HORIZONTAL[model].length;
+		labels = s.getLabels();
+
+		factors_h = FACTORS_HORIZONTAL[model];
+		factors_v = FACTORS_VERTICAL[model];
+
+		member = members;
+		size = members == null ? labels.length : members.length;
+
+		first = new int[size + 1];
+		for (int i = 0; i < size; i++)
+			first[i + 1] = first[i] + getLabel(i).getNeighbours().size();
+
+		neighbour = new int[first[size]];
+		conflicts = new long[first[size] * positions];
+
+		for (int i = 0; i < size; i++)
+		{
+			Label l = getLabel(i);
+			Vector v = l.getNeighbours();
+
+			for (int e = first[i]; e < first[i + 1]; e++)
+			{
+				Label o = (Label) v.get(e - first[i]);
+				int j = members == null ? o.getIndex() : local[o.getIndex()];
+
+				if (j < 0)
+				{
+					neighbour[e] = size;
+					if (!o.getUnplacable())
+					{
+						for (int a = 0; a < positions; a++)
+						{
+							if (intersects(l, getOffsetHorizontal(l, a), getOffsetVertical(l, a), o, o.getOffsetHorizontal(), o.getOffsetVertical()))
+								conflicts[e * positions + a] = 1;
+						}
+					}
+					continue;
+				}
+
+				neighbour[e] = j;
+
+				//the conflicts of (j, i) have already been computed
+				int e2 = j < i ? findEntry(j, i) : -1;
+				if (e2 >= 0)
+				{
+					transpose(e2, e);
+					continue;
+				}
+
+				for (int a = 0; a < positions; a++)
+				{
+					long bits = 0;
+					for (int b = 0; b < positions; b++)
+					{
+						if (intersects(l, getOffsetHorizontal(l, a), getOffsetVertical(l, a), o, getOffsetHorizontal(o, b), getOffsetVertical(o, b)))
+							bits |= 1L << b;
+					}
+					conflicts[e * positions + a] = bits;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the entry of neighbour j of label i or -1
+	 */
+	private int findEntry(int i, int j)
+	{
+		for (int e = first[i]; e < first[i + 1]; e++)
+		{
+			if (neighbour[e] == j)
+				return e;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * stores the conflicts of entry src with rows and columns swapped at
+	 * entry dst (intersects() is symmetric)
+	 */
+	private void transpose(int src, int dst)
+	{
+		for (int a = 0; a < positions; a++)
+		{
+			long bits = conflicts[src * positions + a];
+			for (; bits != 0; bits &= bits - 1)
+				conflicts[dst * positions + Long.numberOfTrailingZeros(bits)] |= 1L << a;
+		}
+	}
+
+	/**
+	 * returns the model with the given command line name (4pos, 8pos,
+	 * 1slider, 4slider) or -1
+	 */
+	public static int findModel(String name)
+	{
+		for (int m = 0; m < MODEL_NAMES.length; m++)
+		{
+			if (MODEL_NAMES[m].equals(name))
+				return m;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * returns the command line name of the given model
+	 */
+	public static String getModelName(int model)
+	{
+		return MODEL_NAMES[model];
+	}
+
+	/**
+	 * moves the given label to position k of the given model
+	 */
+	public static void moveTo(Label l, int model, int k)
+	{
+		l.moveTo(FACTORS_HORIZONTAL[model][k] * l.getWidth(), FACTORS_VERTICAL[model][k] * l.getHeight());
+	}
+
+	/**
+	 * the same test as Label.doesIntersect() for l1 at the offsets
+	 * (h1, v1) and l2 at (h2, v2)
+	 */
+	private static boolean intersects(Label l1, double h1, double v1, Label l2, double h2, double v2)
+	{
+		double x1 = l1.getNode().getX() - h1, y1 = l1.getNode().getY() - v1;
+		double x2 = l2.getNode().getX() - h2, y2 = l2.getNode().getY() - v2;
+
+		return (x2 + l2.getWidth() > x1 && x2 < x1 + l1.getWidth())
+			&& (y2 + l2.getHeight() > y1 && y2 < y1 + l1.getHeight());
+	}
+
+	public int getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * @return the number of labels of the region
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the label with local index i
+	 */
+	public Label getLabel(int i)
+	{
+		return member == null ? labels[i] : labels[member[i]];
+	}
+
+	private double getOffsetHorizontal(Label l, int k)
+	{
+		return factors_h[k] * l.getWidth();
+	}
+
+	private double getOffsetVertical(Label l, int k)
+	{
+		return factors_v[k] * l.getHeight();
+	}
+
+	/**
+	 * @return the number of positions per label (K)
+	 */
+	public int getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * @return the current position of label i, UNPLACED or OTHER,
+	 * if it is placed somewhere else
+	 */
+	public int getPosition(int i)
+	{
+		Label l = getLabel(i);
+		if (l.getUnplacable())
+			return UNPLACED;
+
+		for (int k = 0; k < positions; k++)
+		{
+			if (l.getOffsetHorizontal() == getOffsetHorizontal(l, k) && l.getOffsetVertical() == getOffsetVertical(l, k))
+				return k;
+		}
+
+		return OTHER;
+	}
+
+	/**
+	 * @return the position of label i that is closest to its current
+	 * placement (the first one on equal distances)
+	 */
+	public int getNearestPosition(int i)
+	{
+		Label l = getLabel(i);
+		int best = 0;
+		double best_dist = Double.MAX_VALUE;
+
+		for (int k = 0; k < positions; k++)
+		{
+			double dh = l.getOffsetHorizontal() - getOffsetHorizontal(l, k);
+			double dv = l.getOffsetVertical() - getOffsetVertical(l, k);
+
+			if (dh * dh + dv * dv < best_dist)
+			{
+				best_dist = dh * dh + dv * dv;
+				best = k;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * moves label i to position k
+	 */
+	public void moveTo(int i, int k)
+	{
+		Label l = getLabel(i);
+		l.moveTo(getOffsetHorizontal(l, k), getOffsetVertical(l, k));
+	}
+
+	/**
+	 * @return the first entry of the neighbours of label i
+	 */
+	public int getFirstNeighbour(int i)
+	{
+		return first[i];
+	}
+
+	/**
+	 * @return the entry after the last neighbour of label i
+	 */
+	public int getEndNeighbour(int i)
+	{
+		return first[i + 1];
+	}
+
+	/**
+	 * @return the local index of the neighbour stored at entry e, the
+	 * size of the region for labels outside of it
+	 */
+	public int getNeighbour(int e)
+	{
+		return neighbour[e];
+	}
+
+	/**
+	 * @return the positions of the neighbour at entry e that intersect
+	 * position k of the label, as a bitset
+	 */
+	public long getConflicts(int e, int k)
+	{
+		return conflicts[e * positions + k];
+	}
+
+	/**
+	 * true <-> position k of label i intersects the neighbour at entry e
+	 * at its position k2 (always 0 for labels outside the region). Both
+	 * positions must not be UNPLACED.
+	 */
+	public boolean isConflict(int i, int k, int e, int k2)
+	{
+		return ((conflicts[e * positions + k] >>> k2) & 1) != 0;
+	}
+}
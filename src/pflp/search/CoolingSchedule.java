@@ -0,0 +1,279 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.search;
+
+/**
+ * The temperature of an annealing algorithm. The algorithm reports every
+ * move by moveDone() and the end of every stage by endStage(), the
+ * schedule adapts the temperature accordingly. When and how often a
+ * stage ends is still up to the algorithm.
+ */
+public abstract class CoolingSchedule
+{
+	//the temperature is multiplied by a constant factor after each stage
+	public static final int GEOMETRIC = 0;
+
+	//the temperature follows the target acceptance rate of the modified lam schedule
+	public static final int LAM = 1;
+
+	//the temperature is adjusted to an exponentially decreasing acceptance rate
+	public static final int ACCEPTANCE = 2;
+
+	//geometric cooling that reheats if no better solution has been found for a while
+	public static final int REHEAT = 3;
+
+	//the command line names of the schedules
+	private static final String[] SCHEDULE_NAMES = { "geometric", "lam", "acceptance", "reheat" };
+
+	protected double temperature = 0;
+
+	//the factor of the geometric cooling
+	protected double factor = 0.9;
+
+	//the expected number of stages and the number of finished ones
+	protected int stages = 1;
+	protected int stage = 0;
+
+	/**
+	 * creates a new schedule of the given type
+	 */
+	public static CoolingSchedule create(int type)
+	{
+		switch (type)
+		{
+			case LAM:
+				return new LamSchedule();
+			case ACCEPTANCE:
+				return new AcceptanceSchedule();
+			case REHEAT:
+				return new ReheatSchedule();
+			default:
+				return new GeometricSchedule();
+		}
+	}
+
+	/**
+	 * returns the schedule with the given command line name (geometric,
+	 * lam, acceptance, reheat) or -1
+	 */
+	public static int findSchedule(String name)
+	{
+		for (int t = 0; t < SCHEDULE_NAMES.length; t++)
+		{
+			if (SCHEDULE_NAMES[t].equals(name))
+				return t;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * returns the command line name of the given schedule
+	 */
+	public static String getScheduleName(int type)
+	{
+		return SCHEDULE_NAMES[type];
+	}
+
+	/**
+	 * starts the schedule
+	 * @param t the initial temperature
+	 * @param f the factor the algorithm would use for geometric cooling
+	 * @param n the number of stages the algorithm expects
+	 */
+	public void start(double t, double f, int n)
+	{
+		temperature = t;
+		factor = f;
+		stages = Math.max(1, n);
+		stage = 0;
+	}
+
+	public double getTemperature()
+	{
+		return temperature;
+	}
+
+	/**
+	 * the fraction of the expected stages that are already finished
+	 */
+	protected double getProgress()
+	{
+		return Math.min(1., (double) stage / stages);
+	}
+
+	/**
+	 * called after every move
+	 * @param accepted true <-> the move has been taken
+	 * @param dE the change of the objective function (if accepted)
+	 */
+	public void moveDone(boolean accepted, double dE)
+	{
+	}
+
+	/**
+	 * called at the end of each stage
+	 * @param taken the number of accepted moves of the stage
+	 * @param rejected the number of rejected moves of the stage
+	 */
+	public void endStage(long taken, long rejected)
+	{
+		stage++;
+	}
+}
+
+/**
+ * T = T * factor after each stage
+ */
+class GeometricSchedule extends CoolingSchedule
+{
+	public void endStage(long taken, long rejected)
+	{
+		super.endStage(taken, rejected);
+		temperature *= factor;
+	}
+}
+
+/**
+ * the modified lam schedule (see Boyan, "Learning Evaluation Functions
+ * for Global Optimization", 1998). The acceptance rate is estimated
+ * after every move and the temperature is raised or lowered slightly,
+ * until the rate matches a target that stays at 0.44 for most of the
+ * time.
+ */
+class LamSchedule extends CoolingSchedule
+{
+	private static final double RATE_DECAY = 0.998;
+	private static final double STEP = 0.999;
+
+	private double rate = 0.5;
+
+	public void start(double t, double f, int n)
+	{
+		super.start(t, f, n);
+		rate = 0.5;
+	}
+
+	private double getTargetRate()
+	{
+		double p = getProgress();
+
+		if (p < 0.15)
+			return 0.44 + 0.56 * Math.pow(560, -p / 0.15);
+		else if (p < 0.65)
+			return 0.44;
+		else
+			return 0.44 * Math.pow(440, -(p - 0.65) / 0.35);
+	}
+
+	public void moveDone(boolean accepted, double dE)
+	{
+		rate = RATE_DECAY * rate + (accepted ? 1 - RATE_DECAY : 0);
+
+		if (rate > getTargetRate())
+			temperature *= STEP;
+		else
+			temperature /= STEP;
+	}
+}
+
+/**
+ * the temperature is adjusted at the end of each stage, so that the
+ * acceptance rate decreases from INITIAL_RATE to FINAL_RATE within the
+ * expected number of stages
+ */
+class AcceptanceSchedule extends CoolingSchedule
+{
+	private static final double INITIAL_RATE = 0.5;
+	private static final double FINAL_RATE = 0.005;
+
+	//bounds for the change of the temperature within one stage
+	private static final double MIN_CHANGE = 0.5;
+	private static final double MAX_CHANGE = 1.2;
+
+	public void endStage(long taken, long rejected)
+	{
+		super.endStage(taken, rejected);
+
+		double target = INITIAL_RATE * Math.pow(FINAL_RATE / INITIAL_RATE, getProgress());
+		double rate = taken + rejected > 0 ? (double) taken / (taken + rejected) : 0;
+
+		double change = rate > 0 ? target / rate : MAX_CHANGE;
+		temperature *= Math.max(MIN_CHANGE, Math.min(MAX_CHANGE, change));
+	}
+}
+
+/**
+ * geometric cooling, but if the best objective value has not been
+ * improved within PATIENCE stages the temperature is raised to the one
+ * of REHEAT_STAGES stages before (at most MAX_REHEATS times)
+ */
+class ReheatSchedule extends CoolingSchedule
+{
+	private static final int PATIENCE = 5;
+	private static final int REHEAT_STAGES = 3;
+	private static final int MAX_REHEATS = 3;
+
+	//the objective value relative to the start and the best one
+	private double energy = 0, best_energy = 0;
+	private boolean improved = false;
+
+	private int stagnation = 0;
+	private int reheats = 0;
+
+	public void start(double t, double f, int n)
+	{
+		super.start(t, f, n);
+		energy = best_energy = 0;
+		improved = false;
+		stagnation = reheats = 0;
+	}
+
+	public void moveDone(boolean accepted, double dE)
+	{
+		if (!accepted)
+			return;
+
+		energy += dE;
+		if (energy < best_energy)
+		{
+			best_energy = energy;
+			improved = true;
+		}
+	}
+
+	public void endStage(long taken, long rejected)
+	{
+		super.endStage(taken, rejected);
+
+		stagnation = improved ? 0 : stagnation + 1;
+		improved = false;
+
+		if (stagnation >= PATIENCE && reheats < MAX_REHEATS)
+		{
+			temperature /= Math.pow(factor, REHEAT_STAGES);
+			stagnation = 0;
+			reheats++;
+		}
+		else
+			temperature *= factor;
+	}
+}
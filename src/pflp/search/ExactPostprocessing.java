@@ -0,0 +1,371 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Vector;
+
+import pflp.Label;
+import pflp.Solution;
+import pflp.util.WorkerPool;
+
+/**
+ * A component of the conflict graph: the candidate positions of some
+ * unplaced labels (the four corners) and the current positions of the
+ * placed labels they intersect. No candidate outside the component
+ * intersects a candidate inside, so the component can be solved on its
+ * own. The candidates are the vertices of the graph, two candidates are
+ * adjacent if they intersect or belong to the same label.
+ */
+class ConflictComponent
+{
+	//number of search nodes between two checks of the deadline
+	private static final int CHECK_INTERVAL = 1 << 12;
+
+	private static final double EPSILON = 1e-9;
+
+	//the candidates (positioned copies of the labels)
+	Label[] candidates = null;
+	int size = 0;
+
+	double[] weight = null;
+	long[] adjacency = null;
+
+	//candidates that belong to the same label as the given one
+	long[] group = null;
+
+	//the current placement and its weight
+	long initial = 0;
+	double initial_weight = 0;
+
+	//the best placement found so far
+	long best = 0;
+	double best_weight = 0;
+
+	private long deadline = 0;
+	private long nodes = 0;
+	private boolean aborted = false;
+
+	public ConflictComponent(Vector cands)
+	{
+		size = cands.size();
+		candidates = (Label[]) cands.toArray(new Label[size]);
+		weight = new double[size];
+		adjacency = new long[size];
+		group = new long[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			weight[i] = candidates[i].getNode().getWeight();
+
+			if (!candidates[i].getUnplacable())
+			{
+				initial |= 1L << i;
+				initial_weight += weight[i];
+			}
+
+			for (int j = 0; j < size; j++)
+			{
+				if (candidates[i].getIndex() == candidates[j].getIndex())
+					group[i] |= 1L << j;
+				else if (j > i && candidates[i].doesIntersect(candidates[j]))
+				{
+					adjacency[i] |= 1L << j;
+					adjacency[j] |= 1L << i;
+				}
+			}
+
+			adjacency[i] |= group[i] & ~(1L << i);
+		}
+	}
+
+	/**
+	 * true <-> the solution of solve() is better than the current one
+	 */
+	public boolean isImproved()
+	{
+		return best_weight > initial_weight + EPSILON;
+	}
+
+	/**
+	 * searches a maximum weight independent set by branch and bound,
+	 * starting with the current placement. If the deadline is reached,
+	 * the best set found so far is kept.
+	 * @param d the deadline (see System.currentTimeMillis())
+	 * @return false <-> the search has been aborted
+	 */
+	public boolean solve(long d)
+	{
+		deadline = d;
+		best = initial;
+		best_weight = initial_weight;
+
+		search(size == 64 ? -1L : (1L << size) - 1, 0, 0);
+		return !aborted;
+	}
+
+	/**
+	 * an upper bound for the weight that can be added by the candidates
+	 * in p: every label contributes at most once
+	 */
+	private double bound(long p)
+	{
+		double b = 0;
+		while (p != 0)
+		{
+			int v = Long.numberOfTrailingZeros(p);
+			b += weight[v];
+			p &= ~group[v];
+		}
+		return b;
+	}
+
+	private void search(long p, long chosen, double w)
+	{
+		if (aborted)
+			return;
+
+		if (++nodes % CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline)
+		{
+			aborted = true;
+			return;
+		}
+
+		if (p == 0)
+		{
+			if (w > best_weight + EPSILON)
+			{
+				best_weight = w;
+				best = chosen;
+			}
+			return;
+		}
+
+		if (w + bound(p) <= best_weight + EPSILON)
+			return;
+
+		//branch on the label of the first remaining candidate: place it
+		//at one of its remaining positions or leave it unplaced
+		int v = Long.numberOfTrailingZeros(p);
+		long g = group[v] & p;
+
+		for (long q = g; q != 0; q &= q - 1)
+		{
+			int c = Long.numberOfTrailingZeros(q);
+			search(p & ~adjacency[c] & ~g, chosen | (1L << c), w + weight[c]);
+		}
+
+		search(p & ~g, chosen, w);
+	}
+}
+
+/**
+ * Optional post-processing step, that replaces the greedy choices of
+ * SearchThread.cleanupSolution() by optimal ones where possible. The
+ * unplaced labels are grouped into independent components of the
+ * conflict graph (see ConflictComponent) and every component with at
+ * most MAX_COMPONENT_SIZE candidates is solved exactly. The components
+ * are processed in parallel within a given time budget.
+ */
+public class ExactPostprocessing
+{
+	//the maximal number of candidates of a component (size of the bitsets)
+	public static final int MAX_COMPONENT_SIZE = 64;
+
+	private Solution solution = null;
+	private Label[] labels = null;
+
+	//the four corner positions of the unplaced labels
+	private Label[][] corners = null;
+
+	private ConflictComponent[] components = null;
+
+	public ExactPostprocessing(Solution s)
+	{
+		solution = s;
+		labels = s.getLabels();
+	}
+
+	/**
+	 * runs the post-processing on the solution. The solution must not
+	 * contain any intersecting labels.
+	 * @param time_budget maximal running time in ms
+	 * @return the number of additionally placed labels
+	 */
+	public int execute(long time_budget)
+	{
+		final long deadline = System.currentTimeMillis() + time_budget;
+
+		findComponents();
+
+		//small components first, they are solved quickly
+		Arrays.sort(components, new Comparator()
+		{
+			public int compare(Object o1, Object o2)
+			{
+				return ((ConflictComponent) o1).size - ((ConflictComponent) o2).size;
+			}
+		});
+
+		final int[] aborted = new int[1];
+		new WorkerPool().execute(components.length, new WorkerPool.Task()
+		{
+			public void execute(int i)
+			{
+				if (!components[i].solve(deadline))
+				{
+					synchronized (aborted)
+					{
+						aborted[0]++;
+					}
+				}
+			}
+		});
+
+		int before = solution.countLabeledCities();
+		for (int i = 0; i < components.length; i++)
+		{
+			if (components[i].isImproved())
+				apply(components[i]);
+		}
+		int recovered = solution.countLabeledCities() - before;
+
+		System.out.println("exact postprocessing: " + components.length + " components, " + aborted[0] + " aborted, " + recovered + " labels recovered");
+
+		corners = null;
+		components = null;
+		return recovered;
+	}
+
+	private void apply(ConflictComponent c)
+	{
+		for (int i = 0; i < c.size; i++)
+			labels[c.candidates[i].getIndex()].setUnplacable(true);
+
+		for (int i = 0; i < c.size; i++)
+		{
+			if ((c.best & (1L << i)) != 0)
+			{
+				Label l = labels[c.candidates[i].getIndex()];
+				l.moveTo(c.candidates[i].getOffsetHorizontal(), c.candidates[i].getOffsetVertical());
+				l.setUnplacable(false);
+			}
+		}
+	}
+
+	private Label[] getCorners(int i)
+	{
+		if (corners[i] == null)
+		{
+			corners[i] = new Label[4];
+			for (int pos = Label.TOPLEFT; pos <= Label.BOTTOMRIGHT; pos++)
+			{
+				Label l = new Label(labels[i]);
+				l.moveTo(pos);
+				corners[i][pos - Label.TOPLEFT] = l;
+			}
+		}
+
+		return corners[i];
+	}
+
+	/**
+	 * true <-> the labels i and j can't be placed simultaneously (at
+	 * their current position, if they are placed, or at any corner)
+	 */
+	private boolean isConflict(int i, int j)
+	{
+		Label[] ci = labels[i].getUnplacable() ? getCorners(i) : new Label[] { labels[i] };
+		Label[] cj = labels[j].getUnplacable() ? getCorners(j) : new Label[] { labels[j] };
+
+		for (int a = 0; a < ci.length; a++)
+			for (int b = 0; b < cj.length; b++)
+				if (ci[a].doesIntersect(cj[b]))
+					return true;
+
+		return false;
+	}
+
+	/**
+	 * collects all components of the conflict graph that contain at
+	 * least one unplaced label
+	 */
+	private void findComponents()
+	{
+		int n = labels.length;
+		boolean[] visited = new boolean[n];
+		int[] queue = new int[n];
+		Vector result = new Vector();
+
+		corners = new Label[n][];
+
+		for (int start = 0; start < n; start++)
+		{
+			if (visited[start] || !labels[start].getUnplacable())
+				continue;
+
+			//breadth first search, placed labels are linked only by unplaced ones
+			int head = 0, tail = 0, nCandidates = 0;
+			visited[start] = true;
+			queue[tail++] = start;
+
+			while (head < tail)
+			{
+				int i = queue[head++];
+				boolean placed = !labels[i].getUnplacable();
+				nCandidates += placed ? 1 : 4;
+
+				Iterator it = labels[i].getNeighbours().iterator();
+				while (it.hasNext())
+				{
+					int j = ((Label) it.next()).getIndex();
+					if (visited[j] || (placed && !labels[j].getUnplacable()))
+						continue;
+
+					if (isConflict(i, j))
+					{
+						visited[j] = true;
+						queue[tail++] = j;
+					}
+				}
+			}
+
+			if (nCandidates > MAX_COMPONENT_SIZE)
+				continue;
+
+			Vector cands = new Vector();
+			for (int k = 0; k < tail; k++)
+			{
+				int i = queue[k];
+				if (labels[i].getUnplacable())
+					cands.addAll(Arrays.asList(getCorners(i)));
+				else
+					cands.add(new Label(labels[i]));
+			}
+
+			result.add(new ConflictComponent(cands));
+		}
+
+		components = (ConflictComponent[]) result.toArray(new ConflictComponent[result.size()]);
+	}
+}
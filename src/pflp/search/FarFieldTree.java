@@ -0,0 +1,228 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.search;
+
+/**
+ * A quadtree over a set of points (the centers of the labels) for the
+ * Barnes-Hut approximation of a repulsive force K / d^2 between all
+ * pairs of points. A cell that is small compared to its distance to the
+ * query point acts like a single point at its center of mass, so a
+ * query takes O(log n) on well distributed points. The tree is built
+ * once and can be queried by several threads at the same time.
+ */
+class FarFieldTree
+{
+	//a cell with at most LEAF_SIZE points is not divided any further
+	private static final int LEAF_SIZE = 8;
+	private static final int MAX_DEPTH = 32;
+
+	//cells with size / distance < THETA are approximated
+	public static final double THETA = 0.5;
+
+	//the points, cell c contains point[start[c]..end[c] - 1]
+	private double[] x = null, y = null;
+	private int[] point = null;
+
+	//the cells, child[4 * c + q] is the child of c in quadrant q (-2 <-> empty),
+	//child[4 * c] == -1 <-> c is a leaf
+	private int cells = 0;
+	private int[] start = null, end = null, child = null;
+	private double[] size = null, mass_x = null, mass_y = null;
+
+	/**
+	 * builds the tree over the points (x[k], y[k]) for all k in ids[0..n-1]
+	 */
+	public FarFieldTree(double[] x, double[] y, int[] ids, int n)
+	{
+		this.x = x;
+		this.y = y;
+
+		point = new int[n];
+		System.arraycopy(ids, 0, point, 0, n);
+
+		allocate(n / 2 + 1);
+
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+		for (int k = 0; k < n; k++)
+		{
+			x0 = Math.min(x0, x[point[k]]);
+			y0 = Math.min(y0, y[point[k]]);
+			x1 = Math.max(x1, x[point[k]]);
+			y1 = Math.max(y1, y[point[k]]);
+		}
+
+		if (n > 0)
+			build(0, n, x0, y0, Math.max(x1 - x0, y1 - y0), 0);
+	}
+
+	private void allocate(int capacity)
+	{
+		int[] new_start = new int[capacity], new_end = new int[capacity], new_child = new int[4 * capacity];
+		double[] new_size = new double[capacity], new_mass_x = new double[capacity], new_mass_y = new double[capacity];
+
+		if (cells > 0)
+		{
+			System.arraycopy(start, 0, new_start, 0, cells);
+			System.arraycopy(end, 0, new_end, 0, cells);
+			System.arraycopy(child, 0, new_child, 0, 4 * cells);
+			System.arraycopy(size, 0, new_size, 0, cells);
+			System.arraycopy(mass_x, 0, new_mass_x, 0, cells);
+			System.arraycopy(mass_y, 0, new_mass_y, 0, cells);
+		}
+
+		start = new_start;
+		end = new_end;
+		child = new_child;
+		size = new_size;
+		mass_x = new_mass_x;
+		mass_y = new_mass_y;
+	}
+
+	private int build(int s, int e, double x0, double y0, double w, int depth)
+	{
+		if (cells == start.length)
+			allocate(2 * cells);
+
+		int c = cells++;
+		start[c] = s;
+		end[c] = e;
+		size[c] = w;
+
+		double sx = 0, sy = 0;
+		for (int k = s; k < e; k++)
+		{
+			sx += x[point[k]];
+			sy += y[point[k]];
+		}
+		mass_x[c] = sx / (e - s);
+		mass_y[c] = sy / (e - s);
+
+		if (e - s <= LEAF_SIZE || depth >= MAX_DEPTH || w == 0)
+		{
+			child[4 * c] = -1;
+			return c;
+		}
+
+		//split at the center of the cell, first by x then both halves by y
+		double h = w / 2;
+		int m = partition(s, e, x, x0 + h);
+		int m1 = partition(s, m, y, y0 + h);
+		int m2 = partition(m, e, y, y0 + h);
+
+		int[] bounds = { s, m1, m, m2, e };
+		for (int q = 0; q < 4; q++)
+		{
+			if (bounds[q] < bounds[q + 1])
+				child[4 * c + q] = build(bounds[q], bounds[q + 1], x0 + (q >= 2 ? h : 0), y0 + (q % 2 == 1 ? h : 0), h, depth + 1);
+			else
+				child[4 * c + q] = -2; //empty
+		}
+
+		return c;
+	}
+
+	/**
+	 * reorders point[s..e-1], so that all points with v < split come
+	 * first. Returns the index of the first other point.
+	 */
+	private int partition(int s, int e, double[] v, double split)
+	{
+		int i = s, j = e - 1;
+		while (i <= j)
+		{
+			if (v[point[i]] < split)
+				i++;
+			else
+			{
+				int t = point[i];
+				point[i] = point[j];
+				point[j] = t;
+				j--;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * computes the force K / d^2 of all points on the point (px, py),
+	 * points at the same position are ignored
+	 * @param result the x and y component are stored in result[0], result[1]
+	 * @param stack a buffer of at least getStackSize() elements
+	 */
+	public void computeForce(double px, double py, double K, double[] result, int[] stack)
+	{
+		double fx = 0, fy = 0;
+		int top = 0;
+
+		if (cells > 0)
+			stack[top++] = 0;
+
+		while (top > 0)
+		{
+			int c = stack[--top];
+
+			double dx = px - mass_x[c];
+			double dy = py - mass_y[c];
+			double d2 = dx * dx + dy * dy;
+
+			if (child[4 * c] == -1)
+			{
+				for (int k = start[c]; k < end[c]; k++)
+				{
+					double qx = px - x[point[k]];
+					double qy = py - y[point[k]];
+					double q2 = qx * qx + qy * qy;
+					if (q2 > 0)
+					{
+						double f = K / (q2 * Math.sqrt(q2));
+						fx += f * qx;
+						fy += f * qy;
+					}
+				}
+			}
+			else if (size[c] * size[c] < THETA * THETA * d2)
+			{
+				double f = K * (end[c] - start[c]) / (d2 * Math.sqrt(d2));
+				fx += f * dx;
+				fy += f * dy;
+			}
+			else
+			{
+				for (int q = 0; q < 4; q++)
+				{
+					if (child[4 * c + q] >= 0)
+						stack[top++] = child[4 * c + q];
+				}
+			}
+		}
+
+		result[0] = fx;
+		result[1] = fy;
+	}
+
+	/**
+	 * @return the size of the stack needed by computeForce()
+	 */
+	public int getStackSize()
+	{
+		return 3 * MAX_DEPTH + 4;
+	}
+}
@@ -29,6 +29,8 @@ import java.io.IOException;
 import pflp.Label;
 import pflp.PFLPApp;
 import pflp.Solution;
+import pflp.util.IndexedSet;
+import pflp.util.WorkerPool;
 
 /**
  * force directed labeling
@@ -58,8 +60,14 @@ public class ForceDirectedLabeling extends SearchThread
 	private static final int SLIDE_HORIZONTAL = 1;
 	private static final int SLIDE_VERTICAL = 2;
 
-	private double temperature = 0;
-	private double cooling_rate = 0;
+	//number of labels summed up by one task of resyncOverallForce()
+	private static final int SUM_BLOCK = 1 << 12;
+
+	//number of stages until the temperature should become < 1
+	private static final int COOLING_STAGES = 15;
+	
+	private int schedule_type = CoolingSchedule.GEOMETRIC;
+	private CoolingSchedule schedule = null;
 	private int    moves_per_stage = 0;
 	private int    size = 0;
 
@@ -71,14 +79,41 @@ public class ForceDirectedLabeling extends SearchThread
 	private long   nIterations = 0;
 	
 	private boolean simpleCleanup = false;
+	private boolean farField = false;
 	
 	private Label[] labels = null;
 	private double[][] label_forces = null;
-	private double[][][] label_label_forces = null;
 
-	private HashSet obstructed = null;
+	//the neighbours of label i are stored in neighbour[first[i]..first[i + 1] - 1],
+	//reverse[e] is the entry of the opposite direction of entry e
+	private int[] first = null;
+	private int[] neighbour = null;
+	private int[] reverse = null;
+
+	//the force of the neighbour at entry e on the label
+	private double[] pair_force_x = null, pair_force_y = null;
+
+	//the repulsion of all labels that are not neighbours, see updateFarField()
+	private double[] far_force_x = null, far_force_y = null;
+
+	//the current rectangles of all labels
+	private double[] rect_x = null, rect_y = null, rect_w = null, rect_h = null;
+
+	//the placed neighbours of the label processed by updateForce() and
+	//their forces, see computeForces()
+	private int[] batch_entry = new int[0];
+	private double[] batch_x = new double[0], batch_y = new double[0], batch_w = new double[0], batch_h = new double[0];
+	private double[] batch_force_x = new double[0], batch_force_y = new double[0];
+
+	private IndexedSet obstructed = null;
 	
+	//the sum of all force values is maintained incrementally, the error
+	//lost by rounding is kept in overallForceError (compensated summation)
 	private double overallForce = 0.0;
+	private double overallForceError = 0.0;
+	
+	//the result of computeForce()
+	private double force_x = 0.0, force_y = 0.0;
 
 	public ForceDirectedLabeling()
 	{
@@ -90,13 +125,32 @@ public class ForceDirectedLabeling extends SearchThread
 	{
 		simpleCleanup = true;
 	}
+
+	/**
+	 * adds an approximated repulsion between all labels that are not
+	 * neighbours, see updateFarField()
+	 */
+	public void enableFarField()
+	{
+		farField = true;
+	}
+
+	/**
+	 * selects the cooling schedule
+	 * @param type see CoolingSchedule
+	 */
+	public void setCoolingSchedule(int type)
+	{
+		schedule_type = type;
+	}
 	
 	protected void precompute()
 	{
 		int i;
 
 		label_forces = null;
-		label_label_forces = null;
+		pair_force_x = pair_force_y = null;
+		far_force_x = far_force_y = null;
 		obstructed = null;
 
 		System.gc();
@@ -108,28 +162,23 @@ public class ForceDirectedLabeling extends SearchThread
 
 		size = PFLPApp.solution.size();
 		label_forces = new double[size][2];
-		label_label_forces = new double[size][size][2];
+		createNeighbourArrays();
 		
-		obstructed = new HashSet(size);
-
-		overallForce = 0.0;
-		for (i = 0; i < size; i++)
-		{
-			label_forces[i][X] = 0.0;
-			label_forces[i][Y] = 0.0;
+		obstructed = new IndexedSet(size);
 
-			for (int j = 0; j < size; j++)
-			{
-				label_label_forces[i][j][X] = 0.0;
-				label_label_forces[i][j][Y] = 0.0;
-			}
-		}
+		overallForce = overallForceError = 0.0;
 
 		//find good start position
 		for (i = 0; i < size; i++)
 			toRandomPosition(i, false);
 
 		//initialize forces...
+		for (i = 0; i < size; i++)
+			updateRectangle(i);
+
+		if (farField)
+			computeFarField();
+
 		for (i = 0; i < size; i++)
 			updateForce(i);
 		
@@ -138,7 +187,7 @@ public class ForceDirectedLabeling extends SearchThread
 		for (i = 0; i < size; i++)
 		{
 			if(!labels[i].getUnplacable() && (labels[i].isOverlapping() || canSlideHorizontal(labels[i]) || canSlideVertical(labels[i])))
-				obstructed.add(labels[i]);
+				obstructed.add(i);
 				
 			avg_lbl_size += labels[i].getHeight() * labels[i].getWidth();
 		}
@@ -148,12 +197,13 @@ public class ForceDirectedLabeling extends SearchThread
 		double p1 = 0.3; //propability of acceptance
 		double p2 = 0.5; //percentage of overlap
 		double eps_2 = DEFAULT_FORCE_FAKT_EPS * DEFAULT_FORCE_FAKT_EPS;
-		temperature = avg_lbl_size * p2 * DEFAULT_FORCE_FAKT_OVERLAPPING + DEFAULT_OVERLAPPING_PENALTY + DEFAULT_FORCE_FAKT_REPULSIVE / eps_2;
+		double temperature = avg_lbl_size * p2 * DEFAULT_FORCE_FAKT_OVERLAPPING + DEFAULT_OVERLAPPING_PENALTY + DEFAULT_FORCE_FAKT_REPULSIVE / eps_2;
 		temperature /= -Math.log(p1);
 
 		//temp. should become < 1 after N stages...	
-		double N=15;	
-		cooling_rate = Math.pow(1. / temperature, 1. / N);
+		double cooling_rate = Math.pow(1. / temperature, 1. / COOLING_STAGES);
+		schedule = CoolingSchedule.create(schedule_type);
+		schedule.start(temperature, cooling_rate, COOLING_STAGES);
 		
 		//moves per stage...
 		moves_per_stage = 30 * size;
@@ -194,7 +244,7 @@ public class ForceDirectedLabeling extends SearchThread
 		
 		//save some required label infos
 		int    current_index = current.getIndex();
-		double old_force = overallForce;
+		double old_force = getOverallForce();
 		double old_v_offset = current.getOffsetVertical();
 		double old_h_offset = current.getOffsetHorizontal();
 
@@ -209,7 +259,7 @@ public class ForceDirectedLabeling extends SearchThread
 		{
 			boolean slide_h = false;
 			if(slideable_h && slideable_v) //flip a coin...
-				slide_h = PFLPApp.random_generator.nextDouble() <= (Math.abs(label_forces[current_index][X]) / (Math.abs(label_forces[current_index][X]) + Math.abs(label_forces[current_index][Y])));
+				slide_h = random.nextDouble() <= (Math.abs(label_forces[current_index][X]) / (Math.abs(label_forces[current_index][X]) + Math.abs(label_forces[current_index][Y])));
 			else
 				slide_h = slideable_h;
 			
@@ -224,45 +274,47 @@ public class ForceDirectedLabeling extends SearchThread
 		}
 		
 		//take the move?
-		double dE = overallForce - old_force;
-		double p = PFLPApp.random_generator.nextDouble();
+		double dE = getOverallForce() - old_force;
+		double p = random.nextDouble();
 
-		if (dE > 0.0 && p > Math.exp(-dE / temperature))
+		if (dE > 0.0 && p > Math.exp(-dE / schedule.getTemperature()))
 		{
 			//reject move
 			moveLabel(current_index, old_h_offset, old_v_offset);
 			nRejected ++;
+			schedule.moveDone(false, dE);
 		}
 		else
 		{
 			//update set of obstructed labels....
 			if(!current.isOverlapping() && !canSlideHorizontal(current) && !canSlideVertical(current))
-				obstructed.remove(current);
+				obstructed.remove(current_index);
 			
 			Iterator ni = current.getNeighbours().iterator();
 			while (ni.hasNext())
 			{
 				Label ln = (Label) ni.next();
 				if(ln.isOverlapping() || canSlideHorizontal(ln) || canSlideVertical(ln))
-					obstructed.add(ln);
+					obstructed.add(ln.getIndex());
 				else
-					obstructed.remove(ln);
+					obstructed.remove(ln.getIndex());
 			}
 
 			nTaken ++;
+			schedule.moveDone(true, dE);
 			if(Math.abs(dE) < MIN_FORCE)
 				nUnsignificant ++;
 		}
 		
 		if (nTaken + nRejected >= moves_per_stage)
 		{
-			int max_ovl = 0;
+			//the label with most intersections per weight is removed
+			double max_ovl = 0;
 			Label candidate = null;
 			
-			Iterator d = obstructed.iterator();
-			while(d.hasNext())
+			for (int k = 0; k < obstructed.size(); k++)
 			{
-				Label l = (Label) d.next();
+				Label l = labels[obstructed.get(k)];
 				int n = 0;
 				
 				Iterator it = l.getNeighbours().iterator();
@@ -273,9 +325,9 @@ public class ForceDirectedLabeling extends SearchThread
 						n ++;
 				}
 				
-				if(n > max_ovl)
+				if(n > 0 && n / l.getNode().getWeight() > max_ovl)
 				{
-					max_ovl = n;
+					max_ovl = n / l.getNode().getWeight();
 					candidate = l;
 				}
 			}
@@ -306,7 +358,12 @@ public class ForceDirectedLabeling extends SearchThread
 			}
 		
 			//decrease temperature
-			temperature = temperature * cooling_rate;
+			schedule.endStage(nTaken, nRejected);
+			
+			if (farField)
+				updateFarField();
+
+			resyncOverallForce();
 
 			//adjust moves_per_stage
 			moves_per_stage = Math.max(size, Math.min(50 * obstructed.size(), 10 * size));
@@ -314,7 +371,7 @@ public class ForceDirectedLabeling extends SearchThread
 			nStages++;
 
 			if(DEBUG_OUT)
-				System.out.println("stage " + nStages + ": temperature: " +  temperature + ", nTaken = " + nTaken + "(" + (nTaken - nUnsignificant) + "), nRejected = " + nRejected + ", size = " + size + ", moves per stage (new): " + moves_per_stage);
+				System.out.println("stage " + nStages + ": temperature: " +  schedule.getTemperature() + ", nTaken = " + nTaken + "(" + (nTaken - nUnsignificant) + "), nRejected = " + nRejected + ", size = " + size + ", moves per stage (new): " + moves_per_stage);
 
 			nRejected = 0;
 			nTaken = 0;
@@ -325,7 +382,7 @@ public class ForceDirectedLabeling extends SearchThread
 	}
 	
 	/**
-	 * moves the label to a randomly chosen position (4pos - model)
+	 * moves the label to a randomly chosen position (8pos - model)
 	 * forces on the label and/or neighbours are not updated!
 	 * @param index the label to be moved...
 	 */
@@ -336,34 +393,8 @@ public class ForceDirectedLabeling extends SearchThread
 		
 		do
 		{
-			int npos = PFLPApp.random_generator.nextInt(8);
-			switch(npos)
-			{
-				case 0:
-					labels[index].moveTo(Label.TOPLEFT);
-					break;
-				case 1:
-					labels[index].moveTo(Label.TOPRIGHT);
-					break;
-				case 2:
-					labels[index].moveTo(Label.BOTTOMLEFT);
-					break;
-				case 3:
-					labels[index].moveTo(Label.BOTTOMRIGHT);
-					break;
-				case 4:
-					labels[index].moveTo(labels[index].getWidth() / 2., labels[index].getHeight());
-					break;
-				case 5:
-					labels[index].moveTo(0, labels[index].getHeight() / 2.);
-					break;
-				case 6:
-					labels[index].moveTo(labels[index].getWidth() / 2., 0);
-					break;
-				case 7:
-					labels[index].moveTo(labels[index].getWidth(), labels[index].getHeight() / 2.);
-					break;
-			}
+			int npos = random.nextInt(8);
+			CandidateModel.moveTo(labels[index], CandidateModel.EIGHT_POSITION, npos);
 		}while(old_h != labels[index].getOffsetHorizontal() && old_v == labels[index].getOffsetVertical());
 		
 		if(updateForce)
@@ -378,35 +409,48 @@ public class ForceDirectedLabeling extends SearchThread
 	{
 		if(!obstructed.isEmpty())
 		{
-			int i = PFLPApp.random_generator.nextInt(obstructed.size());
-			Iterator it = obstructed.iterator();
-			Label l = null;
-			for(int j=0; j<= i && it.hasNext(); j++)
-				l = (Label)it.next();
-		
-			return l;
+			int i = random.nextInt(obstructed.size());
+			return labels[obstructed.get(i)];
 		}
 		
 		return null;
 	}
 
 	private boolean canSlideHorizontal(Label l)
+	{
+		return canSlideHorizontal(l, l.getOffsetHorizontal(), l.getOffsetVertical(), label_forces[l.getIndex()][X]);
+	}
+
+	private boolean canSlideVertical(Label l)
+	{
+		return canSlideVertical(l, l.getOffsetHorizontal(), l.getOffsetVertical(), label_forces[l.getIndex()][Y]);
+	}
+
+	/**
+	 * true <-> the label could slide horizontally, if it was placed at
+	 * the given offsets and the x component of its force was f
+	 */
+	private boolean canSlideHorizontal(Label l, double h_offset, double v_offset, double f)
 	{
 		return (
-			(l.getOffsetVertical() == 0.0 || l.getOffsetVertical() == l.getHeight())
-				&& Math.abs(label_forces[l.getIndex()][X]) >= MIN_FORCE
-				&& ((label_forces[l.getIndex()][X] > 0.0 && l.getOffsetHorizontal() > 0)
-					|| (label_forces[l.getIndex()][X] < 0.0 && l.getOffsetHorizontal() < l.getWidth())));
+			(v_offset == 0.0 || v_offset == l.getHeight())
+				&& Math.abs(f) >= MIN_FORCE
+				&& ((f > 0.0 && h_offset > 0)
+					|| (f < 0.0 && h_offset < l.getWidth())));
 
 	}
 
-	private boolean canSlideVertical(Label l)
+	/**
+	 * true <-> the label could slide vertically, if it was placed at
+	 * the given offsets and the y component of its force was f
+	 */
+	private boolean canSlideVertical(Label l, double h_offset, double v_offset, double f)
 	{
 		return (
-			(l.getOffsetHorizontal() == 0.0 || l.getOffsetHorizontal() == l.getWidth())
-				&& Math.abs(label_forces[l.getIndex()][Y]) >= MIN_FORCE
-				&& ((label_forces[l.getIndex()][Y] > 0.0 && l.getOffsetVertical() > 0.0)
-					|| (label_forces[l.getIndex()][Y] < 0.0 && l.getOffsetVertical() < l.getHeight())));
+			(h_offset == 0.0 || h_offset == l.getWidth())
+				&& Math.abs(f) >= MIN_FORCE
+				&& ((f > 0.0 && v_offset > 0.0)
+					|| (f < 0.0 && v_offset < l.getHeight())));
 
 	}
 
@@ -415,43 +459,76 @@ public class ForceDirectedLabeling extends SearchThread
 		return d >= 0. ? 1 : -1;
 	}
 	
+	/**
+	 * slides the label along one axis towards the position where the
+	 * force in this direction vanishes. The step is halved whenever the
+	 * force changes its direction. The neighbours don't move meanwhile,
+	 * so the force at each step is evaluated on their rectangles only and
+	 * the label is moved (and the forces of the neighbours are updated)
+	 * just once at the end.
+	 */
 	private void findEquilibrium(Label current, boolean slide_h)
 	{
-		int slide_dir = slide_h ? SLIDE_HORIZONTAL : SLIDE_VERTICAL;
 		int i_current = current.getIndex();
 		int searchIterations = 0;
 
-		int old_direction = signum(slide_h ? label_forces[i_current][X] : label_forces[i_current][Y]);
+		double h_offset = current.getOffsetHorizontal();
+		double v_offset = current.getOffsetVertical();
+		double f_x = label_forces[i_current][X];
+		double f_y = label_forces[i_current][Y];
+
+		int old_direction = signum(slide_h ? f_x : f_y);
 		
 		double total = 0;
 		if(old_direction == 1)
-			total = slide_h ? current.getOffsetHorizontal() : current.getOffsetVertical();
+			total = slide_h ? h_offset : v_offset;
 		else
 			if(slide_h)
-				total = current.getWidth() - current.getOffsetHorizontal();
+				total = current.getWidth() - h_offset;
 			else
-				total = current.getHeight() - current.getOffsetVertical();
+				total = current.getHeight() - v_offset;
 		
 		double amount = total * 0.2; //% of total (remaining) width/height
 
-		double force_diff = 0;
+		int n = gatherNeighbours(i_current);
+
 		do
 		{			
-			if((slide_h && !canSlideHorizontal(current)) || (!slide_h && !canSlideVertical(current)))
+			if((slide_h && !canSlideHorizontal(current, h_offset, v_offset, f_x)) || (!slide_h && !canSlideVertical(current, h_offset, v_offset, f_y)))
 			{
 				if(DEBUG && searchIterations == 0)
 					System.err.println("should be never reached [unable to slide label]...");
 
-				return;
+				break;
 			}
 
-			force_diff = slide_h ? label_forces[i_current][X] : label_forces[i_current][Y];
+			if (slide_h)
+			{
+				if (f_x > 0)
+					h_offset = Math.max(0, h_offset - amount);
+				else
+					h_offset = Math.min(current.getWidth(), h_offset + amount);
+			}
+			else
+			{
+				if (f_y > 0)
+					v_offset = Math.max(0, v_offset - amount);
+				else
+					v_offset = Math.min(current.getHeight(), v_offset + amount);
+			}
 
-			slideBy(current, slide_dir, amount);
-			
-			force_diff = Math.abs(force_diff - (slide_h ? label_forces[i_current][X] : label_forces[i_current][Y]));
+			//the force at the new position (as updateForce() would compute it)
+			computeForces(current.getNode().getX() - h_offset, current.getNode().getY() - v_offset, rect_w[i_current], rect_h[i_current], n);
+
+			f_x = far_force_x[i_current];
+			f_y = far_force_y[i_current];
+			for (int k = 0; k < n; k++)
+			{
+				f_x += batch_force_x[k];
+				f_y += batch_force_y[k];
+			}
 			
-			int new_direction = signum(slide_h ? label_forces[i_current][X] : label_forces[i_current][Y]);
+			int new_direction = signum(slide_h ? f_x : f_y);
 			if(old_direction != new_direction)
 			{
 				old_direction = new_direction;
@@ -460,7 +537,10 @@ public class ForceDirectedLabeling extends SearchThread
 			
 			searchIterations++;
 
-		}while(searchIterations < 20 && Math.abs(slide_h ? label_forces[i_current][X] : label_forces[i_current][Y]) >= MIN_FORCE);
+		}while(searchIterations < 20 && Math.abs(slide_h ? f_x : f_y) >= MIN_FORCE);
+
+		if (searchIterations > 0)
+			moveLabel(i_current, h_offset, v_offset);
 	}
 	
 	/**
@@ -497,38 +577,105 @@ public class ForceDirectedLabeling extends SearchThread
 		moveLabel(i_label, h_offset, v_offset);
 	}
 
+	/**
+	 * stores the neighbourhood relation in flat arrays and allocates the
+	 * pair forces (one per entry instead of one per pair of labels)
+	 */
+	private void createNeighbourArrays()
+	{
+		first = new int[size + 1];
+		for (int i = 0; i < size; i++)
+			first[i + 1] = first[i] + labels[i].getNeighbours().size();
+
+		neighbour = new int[first[size]];
+		reverse = new int[first[size]];
+		pair_force_x = new double[first[size]];
+		pair_force_y = new double[first[size]];
+
+		far_force_x = new double[size];
+		far_force_y = new double[size];
+
+		int max_degree = 0;
+		for (int i = 0; i < size; i++)
+		{
+			Vector v = labels[i].getNeighbours();
+			for (int e = first[i]; e < first[i + 1]; e++)
+				neighbour[e] = ((Label) v.get(e - first[i])).getIndex();
+
+			max_degree = Math.max(max_degree, v.size());
+		}
+
+		//the neighbourhood relation is symmetric
+		for (int i = 0; i < size; i++)
+		{
+			for (int e = first[i]; e < first[i + 1]; e++)
+			{
+				int j = neighbour[e];
+				for (int e2 = first[j]; e2 < first[j + 1]; e2++)
+				{
+					if (neighbour[e2] == i)
+					{
+						reverse[e] = e2;
+						break;
+					}
+				}
+			}
+		}
+
+		rect_x = new double[size];
+		rect_y = new double[size];
+		rect_w = new double[size];
+		rect_h = new double[size];
+		for (int i = 0; i < size; i++)
+		{
+			rect_w[i] = labels[i].getWidth();
+			rect_h[i] = labels[i].getHeight();
+		}
+
+		if (batch_entry.length < max_degree)
+		{
+			batch_entry = new int[max_degree];
+			batch_x = new double[max_degree];
+			batch_y = new double[max_degree];
+			batch_w = new double[max_degree];
+			batch_h = new double[max_degree];
+			batch_force_x = new double[max_degree];
+			batch_force_y = new double[max_degree];
+		}
+	}
+
 	private void removeLabel(int i)
 	{
 		labels[i].setUnplacable(true);
-		obstructed.remove(labels[i]);
+		obstructed.remove(i);
 		
-		overallForce -= calcForceValue(label_forces[i]);
+		addOverallForce(-calcForceValue(label_forces[i]));
 
 		label_forces[i][X] = label_forces[i][Y] = 0.0; //reset force
 
 		//repair the forces when removing a label
-		Iterator it = labels[i].getNeighbours().iterator();
-		while (it.hasNext())
+		for (int e = first[i]; e < first[i + 1]; e++)
 		{
-			int j = ((Label) it.next()).getIndex();
+			int j = neighbour[e];
+			int r = reverse[e];
 
 			//updated force(s)
-			overallForce -= calcForceValue(label_forces[j]);
+			addOverallForce(-calcForceValue(label_forces[j]));
 
-			label_forces[j][X] -= label_label_forces[j][i][X];
-			label_forces[j][Y] -= label_label_forces[j][i][Y];
+			label_forces[j][X] -= pair_force_x[r];
+			label_forces[j][Y] -= pair_force_y[r];
 
-			label_label_forces[i][j][X] = label_label_forces[j][i][X] = 0.0;
-			label_label_forces[i][j][Y] = label_label_forces[j][i][Y] = 0.0;
+			pair_force_x[e] = pair_force_x[r] = 0.0;
+			pair_force_y[e] = pair_force_y[r] = 0.0;
 
-			overallForce += calcForceValue(label_forces[j]);
+			addOverallForce(calcForceValue(label_forces[j]));
 
 			//is the neighour still obstructed?
 			Label ln = labels[j];
 			if(!ln.getUnplacable() && (ln.isOverlapping() || canSlideHorizontal(ln) || canSlideVertical(ln)))
-				obstructed.add(ln);
+				obstructed.add(ln.getIndex());
 			else
-				obstructed.remove(ln);
+				obstructed.remove(ln.getIndex());
 		}
 		return;
 	}
@@ -579,6 +726,65 @@ public class ForceDirectedLabeling extends SearchThread
 		return Math.sqrt(f[X] * f[X] + f[Y] * f[Y]);
 	}
 
+	/**
+	 * adds v to the overall force. The rounding error of the addition is
+	 * accumulated separately (Kahan-Babuska summation), so a long run of
+	 * additions and subtractions of similar values does not drift away
+	 * from the actual sum.
+	 */
+	private void addOverallForce(double v)
+	{
+		double t = overallForce + v;
+
+		if (Math.abs(overallForce) >= Math.abs(v))
+			overallForceError += (overallForce - t) + v;
+		else
+			overallForceError += (v - t) + overallForce;
+
+		overallForce = t;
+	}
+
+	private double getOverallForce()
+	{
+		return overallForce + overallForceError;
+	}
+
+	/**
+	 * recomputes the overall force from the forces of all labels. The
+	 * labels are summed up in blocks on all processors, the partial sums
+	 * are added in a fixed order, so the result does not depend on the
+	 * number of threads.
+	 */
+	private void resyncOverallForce()
+	{
+		final double[] partial = new double[(size + SUM_BLOCK - 1) / SUM_BLOCK];
+
+		new WorkerPool().execute(partial.length, new WorkerPool.Task()
+		{
+			public void execute(int b)
+			{
+				double sum = 0.0, error = 0.0;
+				for (int i = b * SUM_BLOCK; i < Math.min(size, (b + 1) * SUM_BLOCK); i++)
+				{
+					double v = calcForceValue(label_forces[i]);
+					double t = sum + v;
+					error += sum >= v ? (sum - t) + v : (v - t) + sum;
+					sum = t;
+				}
+				partial[b] = sum + error;
+			}
+		});
+
+		double old = getOverallForce();
+
+		overallForce = overallForceError = 0.0;
+		for (int b = 0; b < partial.length; b++)
+			addOverallForce(partial[b]);
+
+		if(DEBUG_OUT)
+			System.out.println("overall force: " + old + ", drift: " + (old - getOverallForce()));
+	}
+
 	/**
 	 * calculates the resultingforce vector according to the specific force model
 	 */
@@ -587,47 +793,225 @@ public class ForceDirectedLabeling extends SearchThread
 		if (labels[i].getUnplacable())
 			return;
 
-		overallForce -= calcForceValue(label_forces[i]);
+		addOverallForce(-calcForceValue(label_forces[i]));
 
-		label_forces[i][X] = label_forces[i][Y] = 0.0; //reset force
+		//reset force
+		label_forces[i][X] = far_force_x[i];
+		label_forces[i][Y] = far_force_y[i];
 
-		Iterator it = labels[i].getNeighbours().iterator();
-		while (it.hasNext())
+		updateRectangle(i);
+
+		int n = gatherNeighbours(i);
+		computeForces(rect_x[i], rect_y[i], rect_w[i], rect_h[i], n);
+
+		for (int k = 0; k < n; k++)
+		{
+			int e = batch_entry[k];
+			int j = neighbour[e];
+			int r = reverse[e];
+
+			pair_force_x[e] = batch_force_x[k];
+			pair_force_y[e] = batch_force_y[k];
+
+			label_forces[i][X] += batch_force_x[k];
+			label_forces[i][Y] += batch_force_y[k];
+
+			//repair force vector at the current neighbour...
+			addOverallForce(-calcForceValue(label_forces[j]));
+
+			label_forces[j][X] -= pair_force_x[r];
+			label_forces[j][Y] -= pair_force_y[r];
+
+			//force(i,j) = -force(j,i)
+			pair_force_x[r] = -batch_force_x[k];
+			pair_force_y[r] = -batch_force_y[k];
+
+			label_forces[j][X] += pair_force_x[r];
+			label_forces[j][Y] += pair_force_y[r];
+
+			addOverallForce(calcForceValue(label_forces[j]));
+		}
+
+		addOverallForce(calcForceValue(label_forces[i]));
+	}
+
+	/**
+	 * computes the repulsion of all placed labels that are not neighbours
+	 * (the far field) on every placed label. The forces act between the
+	 * centers of the labels (K1 / d^2) and are approximated by a
+	 * Barnes-Hut tree, which takes O(n log n) instead of O(n^2). The
+	 * field is kept fixed during a stage.
+	 */
+	private void computeFarField()
+	{
+		final double[] center_x = new double[size];
+		final double[] center_y = new double[size];
+		int[] placed = new int[size];
+		int n = 0;
+
+		for (int i = 0; i < size; i++)
 		{
-			Label l2 = (Label) it.next();
+			center_x[i] = rect_x[i] + rect_w[i] / 2;
+			center_y[i] = rect_y[i] + rect_h[i] / 2;
 
-			if (!l2.getUnplacable())
+			far_force_x[i] = far_force_y[i] = 0.0;
+			if (!labels[i].getUnplacable())
+				placed[n++] = i;
+		}
+
+		final FarFieldTree tree = new FarFieldTree(center_x, center_y, placed, n);
+		final double K = DEFAULT_FORCE_FAKT_REPULSIVE;
+
+		new WorkerPool().execute((size + SUM_BLOCK - 1) / SUM_BLOCK, new WorkerPool.Task()
+		{
+			public void execute(int b)
 			{
-				int j = l2.getIndex();
-				double[] f_n = computeForce(i, j);
+				double[] f = new double[2];
+				int[] stack = new int[tree.getStackSize()];
 
-				label_label_forces[i][j][X] = f_n[X];
-				label_label_forces[i][j][Y] = f_n[Y];
+				for (int i = b * SUM_BLOCK; i < Math.min(size, (b + 1) * SUM_BLOCK); i++)
+				{
+					if (labels[i].getUnplacable())
+						continue;
+
+					tree.computeForce(center_x[i], center_y[i], K, f, stack);
+
+					//the neighbours are handled by the exact forces
+					for (int e = first[i]; e < first[i + 1]; e++)
+					{
+						int j = neighbour[e];
+						if (labels[j].getUnplacable())
+							continue;
+
+						double dx = center_x[i] - center_x[j];
+						double dy = center_y[i] - center_y[j];
+						double d2 = dx * dx + dy * dy;
+						if (d2 > 0)
+						{
+							f[X] -= K * dx / (d2 * Math.sqrt(d2));
+							f[Y] -= K * dy / (d2 * Math.sqrt(d2));
+						}
+					}
+
+					far_force_x[i] = f[X];
+					far_force_y[i] = f[Y];
+				}
+			}
+		});
+	}
 
-				label_forces[i][X] += f_n[X];
-				label_forces[i][Y] += f_n[Y];
+	/**
+	 * recomputes the far field for the current placement and updates
+	 * the forces of the labels and the set of obstructed labels
+	 */
+	private void updateFarField()
+	{
+		double[] old_x = (double[]) far_force_x.clone();
+		double[] old_y = (double[]) far_force_y.clone();
 
-				//repair force vector at the current neighbour...
-				overallForce -= calcForceValue(label_forces[j]);
+		computeFarField();
 
-				label_forces[j][X] -= label_label_forces[j][i][X];
-				label_forces[j][Y] -= label_label_forces[j][i][Y];
+		for (int i = 0; i < size; i++)
+		{
+			Label l = labels[i];
+			if (l.getUnplacable())
+				continue;
 
-				//force(i,j) = -force(j,i)
-				label_label_forces[j][i][X] = -f_n[X];
-				label_label_forces[j][i][Y] = -f_n[Y];
+			label_forces[i][X] += far_force_x[i] - old_x[i];
+			label_forces[i][Y] += far_force_y[i] - old_y[i];
 
-				label_forces[j][X] += label_label_forces[j][i][X];
-				label_forces[j][Y] += label_label_forces[j][i][Y];
+			if (l.isOverlapping() || canSlideHorizontal(l) || canSlideVertical(l))
+				obstructed.add(i);
+			else
+				obstructed.remove(i);
+		}
+	}
 
-				overallForce += calcForceValue(label_forces[j]);
+	/**
+	 * copies the rectangles of the placed neighbours of label i to the
+	 * batch arrays
+	 * @return the number of placed neighbours
+	 */
+	private int gatherNeighbours(int i)
+	{
+		int n = 0;
+		for (int e = first[i]; e < first[i + 1]; e++)
+		{
+			int j = neighbour[e];
+			if (!labels[j].getUnplacable())
+			{
+				batch_entry[n] = e;
+				batch_x[n] = rect_x[j];
+				batch_y[n] = rect_y[j];
+				batch_w[n] = rect_w[j];
+				batch_h[n] = rect_h[j];
+				n++;
 			}
 		}
 
-		overallForce += calcForceValue(label_forces[i]);
+		return n;
+	}
+
+	private void updateRectangle(int i)
+	{
+		rect_x[i] = labels[i].getNode().getX() - labels[i].getOffsetHorizontal();
+		rect_y[i] = labels[i].getNode().getY() - labels[i].getOffsetVertical();
 	}
 
-	private double[] computeForce(int i_from, int i_to)
+	/**
+	 * computes the forces of the first n rectangles in batch_x, batch_y,
+	 * batch_w, batch_h on the rectangle (x1, y1, w1, h1) and stores them
+	 * in batch_force_x, batch_force_y. The results are the same as the ones
+	 * of computeForce(), but the loop has no calls and no data dependent
+	 * control flow apart from conditional moves, so the compiler can keep
+	 * everything in registers (or vectorize it).
+	 */
+	private void computeForces(double x1, double y1, double w1, double h1, int n)
+	{
+		double K1 = DEFAULT_FORCE_FAKT_REPULSIVE;
+		double K2 = DEFAULT_FORCE_FAKT_OVERLAPPING;
+		double eps = DEFAULT_FORCE_FAKT_EPS;
+
+		double f_overlap = K1 / (eps * eps);
+		double cx1 = x1 + w1 / 2, cy1 = y1 + h1 / 2;
+
+		for (int k = 0; k < n; k++)
+		{
+			double x2 = batch_x[k], y2 = batch_y[k], w2 = batch_w[k], h2 = batch_h[k];
+
+			boolean h_intersect = x2 + w2 > x1 && x2 < x1 + w1;
+			boolean v_intersect = y2 + h2 > y1 && y2 < y1 + h1;
+
+			//the distance of Label.getDistance() for the three cases without overlap
+			double gap_y = Math.max((y2 - y1) - h1, (y1 - y2) - h2);
+			double gap_x = Math.max((x2 - x1) - w1, (x1 - x2) - w2);
+			double corner_x = x1 > x2 ? x1 - (x2 + w2) : (x1 + w1) - x2;
+			double corner_y = y1 > y2 ? (y1 + h1) - y2 : y1 - (y2 + h2);
+			double corner = Math.sqrt(corner_x * corner_x + corner_y * corner_y);
+
+			double l = h_intersect ? gap_y : (v_intersect ? gap_x : corner);
+			double v = Math.max(l, eps);
+
+			double area = (Math.min(y1 + h1, y2 + h2) - Math.max(y1, y2)) * (Math.min(x1 + w1, x2 + w2) - Math.max(x1, x2));
+			double f = h_intersect && v_intersect ? f_overlap + K2 * area + DEFAULT_OVERLAPPING_PENALTY : K1 / (v * v);
+
+			//the force acts along the line between the centers
+			double dx = cx1 - (x2 + w2 / 2);
+			double dy = cy1 - (y2 + h2 / 2);
+			double d = Math.sqrt(dx * dx + dy * dy);
+
+			batch_force_x[k] = d != 0.0 ? f * dx / d : 0.0;
+			batch_force_y[k] = d != 0.0 ? f * dy / d : 0.0;
+		}
+	}
+
+	/**
+	 * computes the force of label i_to on label i_from and stores it in
+	 * force_x, force_y. This is called for every neighbour on each move,
+	 * so it works on the coordinates directly and doesn't create any
+	 * objects.
+	 */
+	private void computeForce(int i_from, int i_to)
 	{
 		Label l1 = labels[i_from];
 		Label l2 = labels[i_to];
@@ -636,9 +1020,6 @@ public class ForceDirectedLabeling extends SearchThread
 		double K2 = DEFAULT_FORCE_FAKT_OVERLAPPING;
 		double eps = DEFAULT_FORCE_FAKT_EPS;
 
-		double f = 0.0;
-		double l = l1.getDistance(l2);
-
 		if (DEBUG)
 		{
 			if (labels[i_from].getUnplacable())
@@ -648,36 +1029,76 @@ public class ForceDirectedLabeling extends SearchThread
 				System.err.println("computeForce() called for unplacable label (to)!");
 		}
 
-		//the part proportional to the distance between two labels (small)
-		double v = Math.max(l, eps);
-		f = K1 / (v * v);
+		double w1 = l1.getWidth(), h1 = l1.getHeight();
+		double w2 = l2.getWidth(), h2 = l2.getHeight();
+		double x1 = l1.getNode().getX() - l1.getOffsetHorizontal();
+		double y1 = l1.getNode().getY() - l1.getOffsetVertical();
+		double x2 = l2.getNode().getX() - l2.getOffsetHorizontal();
+		double y2 = l2.getNode().getY() - l2.getOffsetVertical();
+
+		boolean h_intersect = x2 + w2 > x1 && x2 < x1 + w1;
+		boolean v_intersect = y2 + h2 > y1 && y2 < y1 + h1;
+
+		//the part proportional to the distance between two labels (small),
+		//the distance is the same as the one of Label.getDistance()
+		double f = 0.0;
+		if (h_intersect && v_intersect)
+		{
+			f = K1 / (eps * eps);
 
-		//the part proportional to the intersection (if any) of the two labels
-		if (l < 0)
+			//the part proportional to the intersection of the two labels
+			double area = (Math.min(y1 + h1, y2 + h2) - Math.max(y1, y2)) * (Math.min(x1 + w1, x2 + w2) - Math.max(x1, x2));
+			f += K2 * area;
+			f += DEFAULT_OVERLAPPING_PENALTY;
+		}
+		else
 		{
-			Rectangle2D.Double r_int =
-				(Rectangle2D.Double) l1.getRectangle().createIntersection((Rectangle2D) l2.getRectangle());
-			if (!r_int.isEmpty())
+			double l;
+			if (h_intersect)
+				l = Math.abs(y1 - y2) - (y1 < y2 ? h1 : h2);
+			else if (v_intersect)
+				l = Math.abs(x1 - x2) - (x1 < x2 ? w1 : w2);
+			else
 			{
-				double area = r_int.getHeight() * r_int.getWidth();
-				f += K2 * area;
-				f += DEFAULT_OVERLAPPING_PENALTY;
+				double cx1 = x1, cy1 = y1, cx2 = x2, cy2 = y2;
+				if (x1 > x2)
+				{
+					cx2 += w2;
+					if (y1 > y2)
+						cy1 += h1;
+					else
+						cy2 += h2;
+				}
+				else
+				{
+					cx1 += w1;
+					if (y1 > y2)
+						cy1 += h1;
+					else
+						cy2 += h2;
+				}
+
+				double dx = cx1 - cx2;
+				double dy = cy1 - cy2;
+				l = Math.sqrt(dx * dx + dy * dy);
 			}
+
+			double v = Math.max(l, eps);
+			f = K1 / (v * v);
 		}
 
-		Point2D.Double p1 = l1.getCenter();
-		Point2D.Double p2 = l2.getCenter();
-		double dx = p1.x - p2.x;
-		double dy = p1.y - p2.y;
+		//the force acts along the line between the centers
+		double dx = (x1 + w1 / 2) - (x2 + w2 / 2);
+		double dy = (y1 + h1 / 2) - (y2 + h2 / 2);
 		double d = Math.sqrt(dx * dx + dy * dy);
 
-		double[] f_ret = new double[2];
 		if (d != 0.0)
 		{
-			f_ret[X] = f * dx / d;
-			f_ret[Y] = f * dy / d;
+			force_x = f * dx / d;
+			force_y = f * dy / d;
 		}
-		return f_ret;
+		else
+			force_x = force_y = 0.0;
 	}
 
 	private void dumpForces(String filename)
@@ -728,7 +1149,7 @@ public class ForceDirectedLabeling extends SearchThread
 				s += "(" + ((double)Math.round(label_forces[i][Y] * 10)) / 10 + ")";
 			}
 
-			if(obstructed != null && obstructed.contains(labels[i]))
+			if(obstructed != null && obstructed.contains(i))
 				s = "[*]" + s;
 			
 			return s;
@@ -742,7 +1163,7 @@ public class ForceDirectedLabeling extends SearchThread
 	public String getStatusString()
 	{
 		if(isActive())
-			return new String("temperature: " + Math.round(temperature*10) / 10. + ", overall force: " + Math.round(overallForce * 10) / 10. + ", stage: " + nStages);
+			return new String("temperature: " + Math.round(schedule.getTemperature()*10) / 10. + ", overall force: " + Math.round(getOverallForce() * 10) / 10. + ", stage: " + nStages);
 		else
 			return null;
 	}
@@ -766,8 +1187,8 @@ public class ForceDirectedLabeling extends SearchThread
 			d += calcForceValue(label_forces[i]);
 		}
 
-		if (Math.abs(d - overallForce) > 1e-3)
-			System.err.println("testOverallForce() failed: " + d + " vs. " + overallForce);
+		if (Math.abs(d - getOverallForce()) > 1e-3)
+			System.err.println("testOverallForce() failed: " + d + " vs. " + getOverallForce());
 	}
 
 	private void testLabelForce(int i)
@@ -779,6 +1200,9 @@ public class ForceDirectedLabeling extends SearchThread
 
 		if (!labels[i].getUnplacable())
 		{
+			x[X] = far_force_x[i];
+			x[Y] = far_force_y[i];
+
 			while (it.hasNext())
 			{
 				Label l2 = (Label) it.next();
@@ -786,9 +1210,9 @@ public class ForceDirectedLabeling extends SearchThread
 				if (l2.getUnplacable())
 					continue;
 
-				double[] f = computeForce(i, l2.getIndex());
-				x[X] += f[X];
-				x[Y] += f[Y];
+				computeForce(i, l2.getIndex());
+				x[X] += force_x;
+				x[Y] += force_y;
 			}
 		}
 
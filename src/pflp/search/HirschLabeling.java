@@ -21,8 +21,6 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package pflp.search;
 
-import java.awt.geom.Rectangle2D;
-import java.awt.geom.Rectangle2D.Double;
 import java.util.Iterator;
 
 import pflp.Label;
@@ -52,6 +50,22 @@ public class HirschLabeling extends SearchThread
 	private double[][] overlap_vectors = null;
 	private int nInterations = 0;
 
+	//labels whose overlap vector has to be recomputed, because they or
+	//one of their neighbours have been moved by the last sweep
+	private boolean[] dirty = null;
+	private int[] dirty_list = null;
+	private int nDirty = 0;
+
+	//the labels with a non-zero overlap vector (the only ones a sweep can
+	//move), active_index[i] is the position of label i in active (-1 <-> none)
+	private int[] active = null;
+	private int[] active_index = null;
+	private int nActive = 0;
+
+	//the labels that intersect at least one other label and their number
+	private boolean[] overlapping = null;
+	private int nOverlapping = 0;
+
 	public HirschLabeling()
 	{
 		super();
@@ -85,11 +99,22 @@ public class HirschLabeling extends SearchThread
 		solution = PFLPApp.solution;
 
 		overlap_vectors = new double[size][2];
+		dirty = new boolean[size];
+		dirty_list = new int[size];
+		nDirty = 0;
+
+		active = new int[size];
+		active_index = new int[size];
+		nActive = 0;
+		overlapping = new boolean[size];
+		nOverlapping = 0;
+
 		//init: special zone right from the point...
 		for (i = 0; i < size; i++)
 		{
 			overlap_vectors[i][X] = 0.0;
 			overlap_vectors[i][Y] = 0.0;
+			active_index[i] = -1;
 
 			labels[i].moveTo(0.0, labels[i].getHeight());
 		}
@@ -109,11 +134,12 @@ public class HirschLabeling extends SearchThread
 			return true;
 		}
 		
-		if (!solution.existsOverlapping())
+		updateOverlapVectors();
+
+		if (nOverlapping == 0)
 			return true;
 
 		nInterations++;
-		computeOverlapVectors();
 
 		//apply method 2 every sixth iteration 
 		if (nInterations % 6 != 0)
@@ -124,10 +150,17 @@ public class HirschLabeling extends SearchThread
 		return false;
 	}
 
+	/**
+	 * moves every label according to its overlap vector. Labels with a
+	 * zero vector would stay where they are, so only the active labels
+	 * are visited. The order doesn't matter, since the vectors are not
+	 * changed during the sweep.
+	 */
 	private void mapSweep(int method)
 	{
-		for (int k = 0; k < size; k++)
+		for (int a = 0; a < nActive; a++)
 		{
+			int k = active[a];
 			Label current = labels[k];
 			if (method == METHOD1)
 			{
@@ -167,10 +200,16 @@ public class HirschLabeling extends SearchThread
 						slide_h = false;
 					}
 
+					double h_offset = current.getOffsetHorizontal();
+					double v_offset = current.getOffsetVertical();
+
 					slideBy(
 						current,
 						slide_h ? SLIDE_HORIZONTAL : SLIDE_VERTICAL,
 						slide_h ? overlap_vectors[k][X] : overlap_vectors[k][Y]);
+
+					if (h_offset != current.getOffsetHorizontal() || v_offset != current.getOffsetVertical())
+						setMoved(k);
 				}
 			}
 			else //METHOD 2 (absolut movement)
@@ -186,7 +225,11 @@ public class HirschLabeling extends SearchThread
 				if(overlap_vectors[k][Y] != 0.)
 					v_offset = overlap_vectors[k][Y] >= 0 ? 0.0 : current.getHeight();
 					
-				current.moveTo(h_offset, v_offset);
+				if (h_offset != current.getOffsetHorizontal() || v_offset != current.getOffsetVertical())
+				{
+					current.moveTo(h_offset, v_offset);
+					setMoved(k);
+				}
 			}
 		}
 	}
@@ -197,22 +240,72 @@ public class HirschLabeling extends SearchThread
 			computeOverlapVector(i);
 	}
 
+	/**
+	 * marks label i and its neighbours, their overlap vectors change
+	 * when label i is moved
+	 */
+	private void setMoved(int i)
+	{
+		setDirty(i);
+
+		Iterator it = labels[i].getNeighbours().iterator();
+		while (it.hasNext())
+			setDirty(((Label) it.next()).getIndex());
+	}
+
+	private void setDirty(int i)
+	{
+		if (!dirty[i])
+		{
+			dirty[i] = true;
+			dirty_list[nDirty++] = i;
+		}
+	}
+
+	/**
+	 * recomputes the overlap vectors of the dirty labels. All vectors are
+	 * still computed from the positions at the end of the last sweep, so
+	 * the result is the same as that of computeOverlapVectors().
+	 */
+	private void updateOverlapVectors()
+	{
+		for (int k = 0; k < nDirty; k++)
+		{
+			computeOverlapVector(dirty_list[k]);
+			dirty[dirty_list[k]] = false;
+		}
+
+		nDirty = 0;
+	}
+
 	private void computeOverlapVector(int i)
 	{
 		Label l1 = labels[i];
 
 		overlap_vectors[i][X] = overlap_vectors[i][Y] = 0.0;
+		boolean intersects = false;
+
+		double x1 = l1.getNode().getX() - l1.getOffsetHorizontal();
+		double y1 = l1.getNode().getY() - l1.getOffsetVertical();
+		double w1 = l1.getWidth(), h1 = l1.getHeight();
 
 		Iterator it = labels[i].getNeighbours().iterator();
 		while (it.hasNext())
 		{
 			Label l2 = (Label) it.next();
 
-			if (l1.doesIntersect(l2))
+			double x2 = l2.getNode().getX() - l2.getOffsetHorizontal();
+			double y2 = l2.getNode().getY() - l2.getOffsetVertical();
+			double w2 = l2.getWidth(), h2 = l2.getHeight();
+
+			//the same test as Label.doesIntersect()
+			if ((x2 + w2 > x1 && x2 < x1 + w1) && (y2 + h2 > y1 && y2 < y1 + h1))
 			{
-				Rectangle2D.Double r = (Double) l1.getRectangle().createIntersection(l2.getRectangle());
-				double dx = r.getWidth() / 2;
-				double dy = r.getHeight() / 2;
+				intersects = true;
+
+				//half of the size of the intersection
+				double dx = (Math.min(x1 + w1, x2 + w2) - Math.max(x1, x2)) / 2;
+				double dy = (Math.min(y1 + h1, y2 + h2) - Math.max(y1, y2)) / 2;
 
 				//				if(l1.getTopleft().getY() < l2.getTopleft().getY()) //l1 is on top of l2
 				//					dy = -dy;
@@ -230,6 +323,29 @@ public class HirschLabeling extends SearchThread
 				overlap_vectors[i][Y] += dy;
 			}
 		}
+
+		if (intersects != overlapping[i])
+		{
+			overlapping[i] = intersects;
+			nOverlapping += intersects ? 1 : -1;
+		}
+
+		if (overlap_vectors[i][X] != 0.0 || overlap_vectors[i][Y] != 0.0)
+		{
+			if (active_index[i] < 0)
+			{
+				active_index[i] = nActive;
+				active[nActive++] = i;
+			}
+		}
+		else if (active_index[i] >= 0)
+		{
+			//move the last active label to the free position
+			int last = active[--nActive];
+			active[active_index[i]] = last;
+			active_index[last] = active_index[i];
+			active_index[i] = -1;
+		}
 	}
 
 	private boolean canSlideHorizontal(Label l)
@@ -20,315 +20,528 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package pflp.search;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.Arrays;
+import java.util.Random;
 
 import pflp.*;
  
 
 /**
- * dummy base clase for horizontal and vertical line segments
+ * The line segments of possible label positions of all point features,
+ * stored in flat arrays and referenced by their id. Every point feature
+ * i owns four segments: the upper (2i) and lower (2i + 1) horizontal
+ * segment and the left (2n + 2i) and right (2n + 2i + 1) vertical one.
+ * <br>
+ * A segment runs from (left, top) to (right, bottom), i.e. horizontal
+ * segments have top == bottom and vertical ones left == right. The
+ * reference point of the label positions is the lower left corner.
+ * <br>
+ * The arrays are kept between runs and only grow if a larger instance
+ * is labeled, see reset().
  */
-abstract class LineSegment extends Object
+class SegmentStore
 {
-	public SlidePoint slide_point = null;
+	public static final byte HORIZONTAL = 0;
+	public static final byte VERTICAL = 1;
 
-	public double getLabelWidth()
+	private int size = 0;
+
+	//per segment
+	byte[] type = new byte[0];
+	int[] label = new int[0];
+	double[] left = new double[0], right = new double[0];
+	double[] top = new double[0], bottom = new double[0];
+
+	//per point feature
+	double[] point_x = new double[0], point_y = new double[0];
+	double[] label_width = new double[0], label_height = new double[0];
+
+	/**
+	 * discards all segments and creates the initial ones for the given
+	 * point features
+	 */
+	public void reset(PointFeature[] nodes)
 	{
-		return getPoint().getWidth();
+		int n = nodes.length;
+		size = 4 * n;
+
+		if (type.length < size)
+		{
+			type = new byte[size];
+			label = new int[size];
+			left = new double[size];
+			right = new double[size];
+			top = new double[size];
+			bottom = new double[size];
+
+			point_x = new double[n];
+			point_y = new double[n];
+			label_width = new double[n];
+			label_height = new double[n];
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			double x = nodes[i].getX(), y = nodes[i].getY();
+			double w = nodes[i].getWidth(), h = nodes[i].getHeight();
+
+			point_x[i] = x;
+			point_y[i] = y;
+			label_width[i] = w;
+			label_height[i] = h;
+
+			//upper and lower horizontal segment
+			set(2 * i, HORIZONTAL, i, x - w, x, y, y);
+			set(2 * i + 1, HORIZONTAL, i, x - w, x, y + h, y + h);
+
+			//left and right vertical segment
+			set(2 * n + 2 * i, VERTICAL, i, x - w, x - w, y, y + h);
+			set(2 * n + 2 * i + 1, VERTICAL, i, x, x, y, y + h);
+		}
 	}
-	
-	public double getLabelHeight()
+
+	private void set(int s, byte t, int l, double x0, double x1, double y0, double y1)
 	{
-		return getPoint().getHeight();
+		type[s] = t;
+		label[s] = l;
+		left[s] = x0;
+		right[s] = x1;
+		top[s] = y0;
+		bottom[s] = y1;
 	}
-	
-	public PointFeature getPoint()
+
+	public int size()
 	{
-		return slide_point.getPoint();
+		return size;
 	}
-	
-	public Label getLabel()
+
+	/**
+	 * segments are ordered by the right edge of their leftmost label
+	 * position, ties are broken by the y-coordinate of the upper end
+	 * (on equal edges the upper segment is smaller)
+	 */
+	public int compare(int a, int b)
+	{
+		double ka = left[a] + label_width[label[a]];
+		double kb = left[b] + label_width[label[b]];
+
+		if (ka < kb)
+			return -1;
+		else if (ka > kb)
+			return +1;
+		else if (top[a] < top[b])
+			return -1;
+		else if (top[a] > top[b])
+			return +1;
+		else
+			return 0;
+	}
+
+	/**
+	 * returns the upper end of the vertical range covered by
+	 * any label position on segment s
+	 */
+	public double getExtentLow(int s)
+	{
+		return top[s] - label_height[label[s]];
+	}
+
+	/**
+	 * returns the lower end of the vertical range covered by
+	 * any label position on segment s
+	 */
+	public double getExtentHigh(int s)
 	{
-		return slide_point.getLabel();
+		return bottom[s];
+	}
+
+	/**
+	 * sorts the first n of the given segment ids by their left edge
+	 * (heapsort, the order of segments with equal edges is undefined)
+	 */
+	public void sortByLeft(int[] ids, int n)
+	{
+		for (int i = n / 2 - 1; i >= 0; i--)
+			siftDownByLeft(ids, i, n);
+
+		for (int end = n - 1; end > 0; end--)
+		{
+			int tmp = ids[0];
+			ids[0] = ids[end];
+			ids[end] = tmp;
+			siftDownByLeft(ids, 0, end);
+		}
+	}
+
+	private void siftDownByLeft(int[] ids, int i, int n)
+	{
+		int s = ids[i];
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= n)
+				break;
+
+			if (child + 1 < n && left[ids[child + 1]] > left[ids[child]])
+				child++;
+
+			if (left[ids[child]] <= left[s])
+				break;
+
+			ids[i] = ids[child];
+			i = child;
+		}
+		ids[i] = s;
 	}
 }
 
 /**
- * Implements a horizontal segment of possible positions for
- * a label candidate. the reference point is the lower left
- * corner
+ * A binary min-heap of segment ids ordered by SegmentStore.compare()
+ * (ties are broken by the id), that supports removal and key changes
+ * of arbitrary segments.
  */
-class HorizontalSegment extends LineSegment implements Comparable
+class SegmentHeap
 {
-	private double XLeft = 0., XRight=0., Y=0.;
-	
-	/**
-	 * creates the initial horizontal segment
-	 * @param s the referenced Slidepoint
-	 * @param upperSegment true for the upper, false for the lower segment
-	 */	
-	public HorizontalSegment(SlidePoint s, boolean upperSegment)
-	{
-		slide_point = s;
-		XLeft = getPoint().getX() - getLabelWidth();
-		XRight = getPoint().getX();
-		
-		if(upperSegment)
-			Y = getPoint().getY();
-		else
-			Y = getPoint().getY() + getLabelHeight();
-	}
-	
-	public double getWidth()
+	private SegmentStore store = null;
+	private int[] heap = null;
+	private int size = 0;
+
+	//position of every segment in the heap, -1 <-> segment has been removed
+	private int[] heap_index = null;
+
+	public SegmentHeap(SegmentStore store)
 	{
-		return XRight - XLeft;
+		this.store = store;
+		heap = new int[0];
+		heap_index = new int[0];
 	}
-	
-	public double getXLeft() 
+
+	/**
+	 * removes all segments, has to be called after the store has been reset
+	 */
+	public void reset()
 	{
-		return XLeft;
+		size = 0;
+
+		if (heap.length < store.size())
+		{
+			heap = new int[store.size()];
+			heap_index = new int[store.size()];
+		}
+
+		Arrays.fill(heap_index, 0, store.size(), -1);
 	}
-	
-	public void setXLeft(double left) 
+
+	public int size()
 	{
-		XLeft = left;
+		return size;
 	}
-	
-	public double getXRight() 
+
+	public boolean contains(int s)
 	{
-		return XRight;
+		return heap_index[s] >= 0;
 	}
-	
-	public void setXRight(double right) 
+
+	private boolean less(int a, int b)
 	{
-		XRight = right;
+		int c = store.compare(a, b);
+		return c < 0 || (c == 0 && a < b);
 	}
-	
-	public double getY() 
+
+	private void set(int i, int s)
 	{
-		return Y;
+		heap[i] = s;
+		heap_index[s] = i;
 	}
-	
-	public void setY(double y) 
+
+	private void siftUp(int i)
 	{
-		Y = y;
+		int s = heap[i];
+		while (i > 0)
+		{
+			int parent = (i - 1) >> 1;
+			if (!less(s, heap[parent]))
+				break;
+
+			set(i, heap[parent]);
+			i = parent;
+		}
+		set(i, s);
 	}
-	
-	public int compareTo(Object o) 
+
+	private void siftDown(int i)
 	{
-		try
-		{
-			if(o.getClass().getName().equals("pflp.search.HorizontalSegment"))
-			{
-				HorizontalSegment s =(HorizontalSegment)o;
-				
-				//this < s if it's right edge is left of s
-				if(getXLeft() + getLabelWidth() < s.getXLeft() + s.getLabelWidth())
-					return -1;
-				else if(getXLeft() + getLabelWidth() > s.getXLeft() + s.getLabelWidth())
-					return +1;
-				else if(getY() < s.getY())
-					return -1;
-				else if(getY() > s.getY())
-					return +1;
-				else return 0;
-			}
-			else if(o.getClass().getName().equals("pflp.search.VerticalSegment"))
-			{
-				VerticalSegment s = (VerticalSegment)o;
-				
-				if(getXLeft() + getLabelWidth() < s.getX() + s.getLabelWidth())
-					return -1;
-				else if(getXLeft() + getLabelWidth() > s.getX() + s.getLabelWidth())
-					return +1;
-				else if(getY() < s.getYUp())
-					return -1;
-				else if(getY() > s.getYUp())
-					return +1;
-				else 
-					return 0;
-			}
-			else
-			{
-				throw new Exception("unsupported class in HorizontalSegment::compareTo");
-			}
-			
-		} 
-		catch (ClassNotFoundException e)
+		int s = heap[i];
+		while (true)
 		{
-			e.printStackTrace();
-		} 
-		catch (Exception e)
-		{
-			e.printStackTrace();
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+
+			if (child + 1 < size && less(heap[child + 1], heap[child]))
+				child++;
+
+			if (!less(heap[child], s))
+				break;
+
+			set(i, heap[child]);
+			i = child;
 		}
-		
-		return 0;
+		set(i, s);
 	}
-};
 
-/**
- * Implements a vertical segment of possible positions for
- * a label candidate. the reference point is the lower left
- * corner
- */
-class VerticalSegment extends LineSegment implements Comparable
-{
-	private double YUp = 0., YDown=0., X=0.;
-	
-	/**
-	 * creates the initial horizontal segment
-	 * @param s the referenced Slidepoint
-	 * @param upperSegment true for the upper, false for the lower segment
-	 */	
-	public VerticalSegment(SlidePoint s, boolean leftSegment)
-	{
-		slide_point = s;
-		YUp = getPoint().getY();
-		YDown = getPoint().getY() + getLabelHeight();
-		
-		if(leftSegment)
-			X = getPoint().getX() - getLabelWidth();
-		else
-			X = getPoint().getX();
+	public void add(int s)
+	{
+		set(size++, s);
+		siftUp(size - 1);
 	}
-	
-	public double getHeight()
+
+	/**
+	 * returns the minimal segment or -1, if the heap is empty
+	 */
+	public int peek()
 	{
-		return YDown - YUp;
+		return size > 0 ? heap[0] : -1;
 	}
-			 
-	public double getX() 
+
+	/**
+	 * restores the heap order after the key of s has been changed
+	 */
+	public void update(int s)
 	{
-		return X;
+		siftUp(heap_index[s]);
+		siftDown(heap_index[s]);
 	}
 
-	public void setX(double x) 
+	public void remove(int s)
 	{
-		X = x;
+		int i = heap_index[s];
+		int last = heap[--size];
+		heap_index[s] = -1;
+
+		if (i < size)
+		{
+			set(i, last);
+			update(last);
+		}
 	}
+}
+
+/**
+ * A treap of segment ids, ordered by the upper end of their vertical
+ * extent. Every node stores the maximal lower end within its subtree,
+ * which allows to report all segments intersecting a vertical range
+ * without visiting the others. Segments must be removed before their
+ * vertical extent changes.
+ */
+class IntervalTree
+{
+	private static final int NIL = -1;
+
+	private static final long SEED = 181278;
 
-	public double getYDown() 
+	private SegmentStore store = null;
+	private int root = NIL;
+	private Random priorities = new Random(SEED);
+
+	//node data, indexed by the segment id
+	private int[] tree_left = null, tree_right = null;
+	private int[] tree_priority = null;
+	private double[] tree_low = null, tree_max = null;
+
+	//the two parts of the last split()
+	private int split_left = NIL, split_right = NIL;
+
+	//the result of the last call to query()
+	private int[] result = new int[16];
+	private int result_size = 0;
+
+	public IntervalTree(SegmentStore store)
 	{
-		return YDown;
+		this.store = store;
+
+		tree_left = tree_right = tree_priority = new int[0];
+		tree_low = tree_max = new double[0];
 	}
 
-	public void setYDown(double down) 
+	/**
+	 * removes all segments, has to be called after the store has been reset
+	 */
+	public void reset()
 	{
-		YDown = down;
+		int n = store.size();
+
+		root = NIL;
+		priorities.setSeed(SEED);
+
+		if (tree_left.length < n)
+		{
+			tree_left = new int[n];
+			tree_right = new int[n];
+			tree_priority = new int[n];
+			tree_low = new double[n];
+			tree_max = new double[n];
+		}
 	}
 
-	public double getYUp() 
+	private boolean less(int a, int b)
 	{
-		return YUp;
+		return tree_low[a] < tree_low[b] || (tree_low[a] == tree_low[b] && a < b);
 	}
 
-	public void setYUp(double up) 
+	private void updateMax(int s)
 	{
-		YUp = up;
+		double m = store.getExtentHigh(s);
+		int l = tree_left[s], r = tree_right[s];
+		if (l != NIL && tree_max[l] > m)
+			m = tree_max[l];
+		if (r != NIL && tree_max[r] > m)
+			m = tree_max[r];
+		tree_max[s] = m;
 	}
 
-	public int compareTo(Object o)  
+	private int merge(int a, int b)
 	{
-		try
+		if (a == NIL)
+			return b;
+		if (b == NIL)
+			return a;
+
+		if (tree_priority[a] > tree_priority[b])
 		{
-			if(o.getClass().getName().equals("pflp.search.VerticalSegment"))
-			{
-				VerticalSegment s =(VerticalSegment)o;
-			
-				//this < s if it's right edge is left of s
-				if(getX() + getLabelWidth() < s.getX() + s.getLabelWidth())
-					return -1;
-				else if(getX() + getLabelWidth() > s.getX() + s.getLabelWidth())
-					return +1;
-				else if(getYUp() < s.getYUp())
-					return -1;
-				else if(getYUp() > s.getYUp())
-					return +1;
-				else return 0;
-			}
-			else if(o.getClass().getName().equals("pflp.search.HorizontalSegment"))
-			{
-				HorizontalSegment s = (HorizontalSegment)o;
-				
-				if(getX() + getLabelWidth() < s.getXLeft() + s.getLabelWidth())
-					return -1;
-				else if(getX() + getLabelWidth() > s.getXLeft() + s.getLabelWidth())
-					return +1;
-				else if(getYUp() < s.getY())
-					return -1;
-				else if(getYUp() > s.getY())
-					return +1;
-				else return 0;
-			}
-			else
-			{
-				throw new Exception("unsupported class in VerticalSegment::compareTo");
-			}
-			
-		} 
-		catch (ClassNotFoundException e)
+			tree_right[a] = merge(tree_right[a], b);
+			updateMax(a);
+			return a;
+		}
+		else
 		{
-			e.printStackTrace();
-		} 
-		catch (Exception e)
+			tree_left[b] = merge(a, tree_left[b]);
+			updateMax(b);
+			return b;
+		}
+	}
+
+	private int insert(int t, int s)
+	{
+		if (t == NIL)
+			return s;
+
+		if (tree_priority[s] > tree_priority[t])
 		{
-			e.printStackTrace();
+			//split t at s
+			split(t, s);
+			tree_left[s] = split_left;
+			tree_right[s] = split_right;
+			updateMax(s);
+			return s;
 		}
-		
-		return 0;
+
+		if (less(s, t))
+			tree_left[t] = insert(tree_left[t], s);
+		else
+			tree_right[t] = insert(tree_right[t], s);
+
+		updateMax(t);
+		return t;
 	}
-	
-};
 
-class SlidePoint
-{
-	private HorizontalSegment horizontalSegmentUp, horizontalSegmentDown;
-	private VerticalSegment verticalSegmentLeft, verticalSegmentRight;
-	private PointFeature p;
-	private Label l;
-	
-	public SlidePoint(PointFeature _p, Label _l)
+	private void split(int t, int s)
 	{
-		p = _p;
-		l = _l;
-			
-		//create horizontal and vertical segments
-		horizontalSegmentUp = new HorizontalSegment(this, true);
-		horizontalSegmentDown = new HorizontalSegment(this, false);
-		verticalSegmentLeft = new VerticalSegment(this, true);
-		verticalSegmentRight = new VerticalSegment(this, false);
+		if (t == NIL)
+		{
+			split_left = split_right = NIL;
+			return;
+		}
+
+		if (less(t, s))
+		{
+			split(tree_right[t], s);
+			tree_right[t] = split_left;
+			updateMax(t);
+			split_left = t;
+		}
+		else
+		{
+			split(tree_left[t], s);
+			tree_left[t] = split_right;
+			updateMax(t);
+			split_right = t;
+		}
 	}
-	
-	public PointFeature getPoint()
+
+	private int remove(int t, int s)
 	{
-		return p;
+		if (t == NIL)
+			return NIL;
+
+		if (t == s)
+			return merge(tree_left[t], tree_right[t]);
+
+		if (less(s, t))
+			tree_left[t] = remove(tree_left[t], s);
+		else
+			tree_right[t] = remove(tree_right[t], s);
+
+		updateMax(t);
+		return t;
 	}
-	
-	public Label getLabel()
+
+	private void query(int t, double low, double high)
 	{
-		return l;
+		while (t != NIL && tree_max[t] >= low)
+		{
+			query(tree_left[t], low, high);
+
+			if (tree_low[t] > high)
+				return;
+
+			if (store.getExtentHigh(t) >= low)
+			{
+				if (result_size == result.length)
+					result = Arrays.copyOf(result, 2 * result_size);
+
+				result[result_size++] = t;
+			}
+
+			t = tree_right[t];
+		}
 	}
 
-	public HorizontalSegment getHorizontalSegmentDown() 
+	public void insert(int s)
 	{
-		return horizontalSegmentDown;
+		tree_left[s] = tree_right[s] = NIL;
+		tree_priority[s] = priorities.nextInt();
+		tree_low[s] = store.getExtentLow(s);
+		tree_max[s] = store.getExtentHigh(s);
+
+		root = insert(root, s);
 	}
 
-	public HorizontalSegment getHorizontalSegmentUp() 
+	public void remove(int s)
 	{
-		return horizontalSegmentUp;
+		root = remove(root, s);
+		tree_left[s] = tree_right[s] = NIL;
 	}
 
-	public VerticalSegment getVerticalSegmentLeft() 
+	/**
+	 * searches all segments whose vertical extent intersects [low, high].
+	 * The ids of the found segments are stored in the array returned by
+	 * getResult().
+	 * @return the number of found segments
+	 */
+	public int query(double low, double high)
 	{
-		return verticalSegmentLeft;
+		result_size = 0;
+		query(root, low, high);
+		return result_size;
 	}
 
-	public VerticalSegment getVerticalSegmentRight() 
+	/**
+	 * @return the ids found by the last call to query()
+	 */
+	public int[] getResult()
 	{
-		return verticalSegmentRight;
+		return result;
 	}
 }
 
@@ -341,22 +554,35 @@ public class LeftmostHeuristic extends SearchThread
 {
 	private static long MAX_ITERATIONS = 50;
 	
-	private SlidePoint[] slide_points = null;
-	private LinkedList horizontalSegments;
-	private LinkedList verticalSegments;
+	//relative tolerance of the range queries, the exact conditions are tested afterwards
+	private static final double QUERY_TOLERANCE = 1e-9;
+	
+	//all segments of the current run. The buffers are reused by
+	//later runs, so repeated runs don't allocate them again
+	private SegmentStore store = new SegmentStore();
+
+	//all remaining segments, ordered by the right edge of their leftmost position
+	private SegmentHeap segments = new SegmentHeap(store);
+	
+	//all segments left of the current frontier, ordered by their vertical extent
+	private IntervalTree activeSegments = new IntervalTree(store);
+
+	//all segments sorted by their left edge and the number of activated ones
+	private int[] activationOrder = new int[0];
+	private int nActivations = 0;
+	private int nActivated = 0;
+	
+	private Label[] labels = null;
 	
 	private Solution solution = null;
 
-	private LineSegment nextSegment = null; //defined in precompute
+	private int nextSegment = -1; //defined in precompute
 	
 	public LeftmostHeuristic()
 	{
 		super();
 		name = new String("1/2 approximation");
-		nextSegment = null;
-		
-		horizontalSegments = new LinkedList();
-		verticalSegments = new LinkedList();
+		nextSegment = -1;
 	}
 
 	public boolean checkRequirements()
@@ -377,43 +603,35 @@ public class LeftmostHeuristic extends SearchThread
 
 	protected void precompute()
 	{
-		SlidePoint s = null;
 		//initialize data structures...
 		int n = PFLPApp.instance.size();
 		solution = new Solution(PFLPApp.instance, false);
+		labels = solution.getLabels();
 		
-		slide_points = new SlidePoint[n];
+		//create the 4 possible line segments of each point, horizontal
+		//segments precede vertical ones on equal positions
+		store.reset(PFLPApp.instance.getNodes());
+		segments.reset();
+		activeSegments.reset();
 		
-		nextSegment = null;
+		if(activationOrder.length < 4 * n)
+			activationOrder = new int[4 * n];
+		nActivations = 4 * n;
+		nActivated = 0;
 		
+		//set labels to "unlabeled"
 		for(int i=0; i < n; i++)
+			labels[i].setUnplacable(true);
+		
+		for(int s=0; s < 4 * n; s++)
 		{
-			//set label to "unlabeled"
-			solution.getLabels()[i].setUnplacable(true);
-			
-			//create the 4 possible line segments and insert them in
-			//the proper lists
-			s = new SlidePoint(PFLPApp.instance.getNodes()[i], solution.getLabels()[i]);
-			
-			horizontalSegments.add(s.getHorizontalSegmentUp());
-			horizontalSegments.add(s.getHorizontalSegmentDown());
-			
-			verticalSegments.add(s.getVerticalSegmentLeft());
-			verticalSegments.add(s.getVerticalSegmentRight());
-			
-			if(nextSegment == null || s.getHorizontalSegmentUp().compareTo(nextSegment) < 0)
-				nextSegment = s.getHorizontalSegmentUp();
-
-			if(s.getHorizontalSegmentDown().compareTo(nextSegment) < 0)
-				nextSegment = s.getHorizontalSegmentDown();
-
-			if(s.getVerticalSegmentLeft().compareTo(nextSegment) < 0)
-				nextSegment = s.getVerticalSegmentLeft();
-
-			if(s.getVerticalSegmentRight().compareTo(nextSegment) < 0)
-				nextSegment = s.getVerticalSegmentRight();
-			
+			segments.add(s);
+			activationOrder[s] = s;
 		}
+
+		store.sortByLeft(activationOrder, nActivations);
+		
+		nextSegment = segments.peek();
 		
 		PFLPApp.solution = solution;
 	}
@@ -421,48 +639,39 @@ public class LeftmostHeuristic extends SearchThread
 	protected boolean iterate()
 	{
 		long counter = 0;
-		while(nextSegment != null)
+		double[] left = store.left, right = store.right;
+		double[] top = store.top, bottom = store.bottom;
+		
+		while(nextSegment >= 0)
 		{
-			boolean isHSegment = false;
-
-			try
-			{
-				isHSegment = nextSegment.getClass() == Class.forName("pflp.search.HorizontalSegment");
-			} 
-			catch (ClassNotFoundException e)
-			{
-				e.printStackTrace();
-				return true;
-			}
+			int s = nextSegment;
+			int i = store.label[s];
 			
-			Label next_label = nextSegment.getLabel();
-			PointFeature next_point = nextSegment.getPoint();
+			Label next_label = labels[i];
+			double x = store.point_x[i], y = store.point_y[i];
+			double width = store.label_width[i], height = store.label_height[i];
 			
 			double h_offset = 0., v_offset = 0.;
 			//place the label associated with nextSegment at the proper position
-			if(isHSegment)
+			if(store.type[s] == SegmentStore.HORIZONTAL)
 			{
-				HorizontalSegment nextHSegment = (HorizontalSegment) nextSegment;
-				
-				h_offset = next_point.getX() - nextHSegment.getXLeft();
+				h_offset = x - left[s];
 				
-				if(nextHSegment.getY() == next_point.getY()) //upper segment
-					v_offset = next_point.getHeight();
-				else if(nextHSegment.getY() == next_point.getY() + next_point.getHeight()) //lower segment
+				if(top[s] == y) //upper segment
+					v_offset = height;
+				else if(top[s] == y + height) //lower segment
 					v_offset = 0.;
 				else
 					System.err.println("numerical problems in LeftMostHeuristic::iterate() [1]: should be never reached!");
 			}
 			else
 			{
-				VerticalSegment nextVSegment = (VerticalSegment) nextSegment;
-
-				v_offset = next_point.getHeight() - (nextVSegment.getYUp() - next_point.getY());
+				v_offset = height - (top[s] - y);
 				
-				if(nextVSegment.getX() == next_point.getX()) //right segment
+				if(left[s] == x) //right segment
 					h_offset = 0.;
-				else if(nextVSegment.getX() == next_point.getX() - next_point.getWidth()) //left segment
-					h_offset = next_point.getWidth();
+				else if(left[s] == x - width) //left segment
+					h_offset = width;
 				else
 					System.err.println("numerical problems in LeftMostHeuristic::iterate() [2]: should be never reached!");
 			}
@@ -474,83 +683,88 @@ public class LeftmostHeuristic extends SearchThread
 			next_label.moveTo(h_offset, v_offset);
 			next_label.setUnplacable(false);
 			
-			//update horizontal + vertical segments and find next
-			//minimal segment
-			nextSegment = null;
-			
 			//compute new occupied frontier segment
 			double ofX = next_label.getTopleft().x + next_label.getWidth();
 			double ofYTop = next_label.getTopleft().y; 
 			double ofYBottom = ofYTop + next_label.getHeight();
 			
-			//horizontal segments
-			ListIterator li = null;
-			li = horizontalSegments.listIterator();
-			while(li.hasNext())
+			//segments left of the frontier may be affected from now on, the
+			//frontier never moves to the left
+			while(nActivated < nActivations && left[activationOrder[nActivated]] <= ofX)
+			{
+				int ls = activationOrder[nActivated++];
+				if(segments.contains(ls))
+					activeSegments.insert(ls);
+			}
+			
+			//update horizontal + vertical segments in the range of the new label
+			double tolerance = QUERY_TOLERANCE * (1. + Math.abs(ofYTop) + Math.abs(ofYBottom));
+			int nAffected = activeSegments.query(ofYTop - tolerance, ofYBottom + tolerance);
+			int[] affected = activeSegments.getResult();
+			
+			for(int k=0; k < nAffected; k++)
 			{
-				HorizontalSegment hs = (HorizontalSegment)li.next();
-				double ofYLocalBottom = ofYBottom + hs.getLabelHeight();
+				int ls = affected[k];
+				double ofYLocalBottom = ofYBottom + store.label_height[store.label[ls]];
 				
-				if(hs.getY()>= ofYTop && hs.getY() <= ofYLocalBottom)
+				if(store.type[ls] == SegmentStore.HORIZONTAL)
 				{
-					if(hs.getXRight() <= ofX) //left of new frontier, no new labelings possible
-					{
-						li.remove();
-						continue;
-					}
-					else if(hs.getXLeft() < ofX) //hs intersects the new frontier -> shrink it
+					if(top[ls] >= ofYTop && top[ls] <= ofYLocalBottom)
 					{
-						hs.setXLeft(ofX);
-						
-						if(hs.getWidth() <= 0)
+						if(right[ls] <= ofX) //left of new frontier, no new labelings possible
 						{
-							System.err.println("LeftMostHeuristic::iterate(): invalid length of horizontal segment: " + hs.getWidth());
+							segments.remove(ls);
+							activeSegments.remove(ls);
+						}
+						else if(left[ls] < ofX) //ls intersects the new frontier -> shrink it
+						{
+							left[ls] = ofX;
+							segments.update(ls);
+							
+							if(right[ls] - left[ls] <= 0)
+							{
+								System.err.println("LeftMostHeuristic::iterate(): invalid length of horizontal segment: " + (right[ls] - left[ls]));
+							}
 						}
 					}
 				}
-				
-				//update nextSegment
-				if(nextSegment == null || hs.compareTo(nextSegment) < 0)
-					nextSegment = hs;
-			}
-			
-			//vertical segments
-			li = verticalSegments.listIterator();
-			while(li.hasNext())
-			{
-				VerticalSegment vs = (VerticalSegment)li.next();
-				double ofYLocalBottom = ofYBottom + vs.getLabelHeight();
-				
-				if(vs.getYDown() > ofYTop && vs.getYUp() < ofYLocalBottom && vs.getX() <= ofX)
+				else
 				{
-					//if the whole vertical segment is covered, remove it...
-					if(vs.getYUp() >= ofYTop && vs.getYDown() <= ofYLocalBottom)
-					{
-						li.remove();
-						continue;
-					}
-					else //shrink the current segment			
+					if(bottom[ls] > ofYTop && top[ls] < ofYLocalBottom && left[ls] <= ofX)
 					{
-						if(vs.getYDown() > ofYLocalBottom) //cut upper line segment
+						activeSegments.remove(ls);
+						
+						//if the whole vertical segment is covered, remove it...
+						if(top[ls] >= ofYTop && bottom[ls] <= ofYLocalBottom)
 						{
-							vs.setYUp(ofYLocalBottom);
+							segments.remove(ls);
+							continue;
 						}
-						else //cut lower line segment
+						else //shrink the current segment			
 						{
-							vs.setYDown(ofYTop);
+							if(bottom[ls] > ofYLocalBottom) //cut upper line segment
+							{
+								top[ls] = ofYLocalBottom;
+							}
+							else //cut lower line segment
+							{
+								bottom[ls] = ofYTop;
+							}
+							
+							if(bottom[ls] - top[ls] <= 0)
+							{
+								System.err.println("LeftMostHeuristic::iterate(): invalid height of vertical segment: " + (bottom[ls] - top[ls]));
+							}
 						}
 						
-						if(vs.getHeight() <= 0)
-						{
-							System.err.println("LeftMostHeuristic::iterate(): invalid height of vertical segment: " + vs.getHeight());
-						}
+						segments.update(ls);
+						activeSegments.insert(ls);
 					}
 				}
-				
-				//update nextSegment
-				if(nextSegment == null || vs.compareTo(nextSegment) < 0)
-					nextSegment = vs;
 			}
+			
+			//find next minimal segment
+			nextSegment = segments.peek();
 
 			counter ++;
 			if(counter > MAX_ITERATIONS || PFLPApp.getOptionDebugIterations()) //give the visualization a chance to redraw
@@ -560,4 +774,4 @@ public class LeftmostHeuristic extends SearchThread
 		return true;
 	}
 
-}
+}
\ No newline at end of file
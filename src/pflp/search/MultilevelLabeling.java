@@ -0,0 +1,327 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.search;
+
+import java.util.Iterator;
+
+import pflp.Label;
+import pflp.PFLPApp;
+import pflp.Solution;
+
+/**
+ * A multilevel scheme on top of simulated annealing. The neighbourhood
+ * graph is coarsened by repeatedly matching each cluster of points with
+ * the closest neighbouring cluster. The heavier representative of the
+ * two stands for both on the next level. The coarsest level is labeled
+ * by simulated annealing. Then the levels are expanded one by one: the
+ * new labels are put at their best corner and only they, their
+ * neighbours and the unplaced labels are annealed again at a low
+ * temperature.
+ */
+public class MultilevelLabeling extends SearchThread
+{
+	private static final boolean DEBUG_OUT = false;
+
+	//coarsening stops at this number of labels
+	private static final int COARSEST_SIZE = 1000;
+
+	//coarsening stops if a level has more than this fraction of the labels of the previous one
+	private static final double MIN_REDUCTION = 0.9;
+
+	private SimulatedAnnealing annealing = null;
+
+	private Solution solution = null;
+	private Label[] labels = null;
+	private int size = 0;
+
+	//label i is part of the levels 0..level[i] (0 <-> the finest level)
+	private int[] level = null;
+	private int levels = 0;
+
+	//the level that is processed next
+	private int current = 0;
+
+	//the labels annealed on the current level, see iterate()
+	private boolean[] region = null;
+	private int[] marked = null;
+
+	/**
+	 * @param sa the algorithm used to solve the levels (its position
+	 * model and cooling schedule are used)
+	 */
+	public MultilevelLabeling(SimulatedAnnealing sa)
+	{
+		super();
+		name = new String("multilevel (simulated annealing)");
+		annealing = sa;
+	}
+
+	protected void precompute()
+	{
+		//create initial solution
+		if (PFLPApp.solution == null)
+			PFLPApp.solution = new Solution(PFLPApp.instance);
+
+		solution = PFLPApp.solution;
+		labels = solution.getLabels();
+		size = labels.length;
+
+		//the annealing gets a stream of its own
+		annealing.random = random.split();
+
+		coarsen();
+
+		//only the labels of the coarsest level are placed at the beginning
+		for (int i = 0; i < size; i++)
+			labels[i].setUnplacable(level[i] < levels - 1);
+
+		current = levels - 1;
+
+		region = new boolean[size];
+		marked = new int[size];
+	}
+
+	protected boolean iterate()
+	{
+		int nMarked = 0;
+		int nNew = 0;
+
+		for (int i = 0; i < size; i++)
+		{
+			if (level[i] != current)
+				continue;
+
+			nNew++;
+			if (!region[i])
+			{
+				region[i] = true;
+				marked[nMarked++] = i;
+			}
+
+			if (current == levels - 1)
+				continue;
+
+			//project the new label to the finer level
+			placeAtBestCorner(labels[i]);
+
+			Iterator it = labels[i].getNeighbours().iterator();
+			while (it.hasNext())
+			{
+				Label l2 = (Label) it.next();
+				int j = l2.getIndex();
+				if (level[j] >= current && !region[j])
+				{
+					region[j] = true;
+					marked[nMarked++] = j;
+				}
+			}
+		}
+
+		//labels that have been removed on coarser levels get another chance
+		for (int i = 0; i < size; i++)
+		{
+			if (level[i] > current && labels[i].getUnplacable() && !region[i])
+			{
+				region[i] = true;
+				marked[nMarked++] = i;
+			}
+		}
+
+		if (DEBUG_OUT)
+			System.out.println("multilevel: level " + current + ", " + nNew + " new labels");
+
+		if (current == levels - 1)
+			annealing.anneal(solution, region, SimulatedAnnealing.START_TEMPERATURE, current == 0);
+		else
+			annealing.anneal(solution, region, SimulatedAnnealing.REPAIR_TEMPERATURE, current == 0);
+
+		for (int k = 0; k < nMarked; k++)
+			region[marked[k]] = false;
+
+		current--;
+		return current < 0;
+	}
+
+	/**
+	 * moves the given label to the corner with the fewest intersections
+	 */
+	private void placeAtBestCorner(Label l)
+	{
+		l.setUnplacable(false);
+
+		int best_pos = Label.TOPLEFT;
+		int best_ovl = -1;
+		for (int pos = Label.TOPLEFT; pos <= Label.BOTTOMRIGHT && best_ovl != 0; pos++)
+		{
+			l.moveTo(pos);
+
+			int ovl_count = 0;
+			Iterator it = l.getNeighbours().iterator();
+			while (it.hasNext())
+			{
+				Label l2 = (Label) it.next();
+				if (!l2.getUnplacable() && l.doesIntersect(l2))
+					ovl_count++;
+			}
+
+			if (best_ovl == -1 || ovl_count < best_ovl)
+			{
+				best_ovl = ovl_count;
+				best_pos = pos;
+			}
+		}
+
+		l.moveTo(best_pos);
+	}
+
+	/**
+	 * computes the levels of all labels. On each level the clusters are
+	 * visited in random order and merged with the unmatched neighbouring
+	 * cluster whose representative is closest.
+	 */
+	private void coarsen()
+	{
+		level = new int[size];
+
+		//the representative of the cluster of each label and the members
+		//of each cluster as a linked list
+		int[] rep = new int[size];
+		int[] next = new int[size];
+		int[] last = new int[size];
+
+		int[] order = new int[size];
+		int n = size;
+
+		for (int i = 0; i < size; i++)
+		{
+			rep[i] = last[i] = order[i] = i;
+			next[i] = -1;
+		}
+
+		boolean[] matched = new boolean[size];
+		levels = 1;
+
+		while (n > COARSEST_SIZE)
+		{
+			int l = levels;
+
+			//random order of the representatives of the previous level
+			for (int k = n - 1; k > 0; k--)
+			{
+				int r = random.nextInt(k + 1);
+				int t = order[k];
+				order[k] = order[r];
+				order[r] = t;
+			}
+
+			for (int k = 0; k < n; k++)
+				matched[order[k]] = false;
+
+			int n_next = 0;
+			for (int k = 0; k < n; k++)
+			{
+				int a = order[k];
+				if (matched[a])
+					continue;
+
+				//find the closest unmatched neighbouring cluster
+				int b = -1;
+				double best_dist = Double.MAX_VALUE;
+				for (int m = a; m >= 0; m = next[m])
+				{
+					Iterator it = labels[m].getNeighbours().iterator();
+					while (it.hasNext())
+					{
+						int c = rep[((Label) it.next()).getIndex()];
+						if (c == a || matched[c])
+							continue;
+
+						double dist = distance(a, c);
+						if (dist < best_dist || (dist == best_dist && c < b))
+						{
+							best_dist = dist;
+							b = c;
+						}
+					}
+				}
+
+				matched[a] = true;
+				int keep = a;
+
+				if (b >= 0)
+				{
+					matched[b] = true;
+
+					//the heavier label represents the cluster
+					double wa = labels[a].getNode().getWeight();
+					double wb = labels[b].getNode().getWeight();
+					keep = wb > wa || (wb == wa && b < a) ? b : a;
+					int drop = keep == a ? b : a;
+
+					for (int m = drop; m >= 0; m = next[m])
+						rep[m] = keep;
+
+					next[last[keep]] = drop;
+					last[keep] = last[drop];
+				}
+
+				level[keep] = l;
+				order[n_next++] = keep;
+			}
+
+			levels++;
+
+			if (n_next > MIN_REDUCTION * n)
+				break;
+
+			n = n_next;
+		}
+
+		if (DEBUG_OUT)
+			System.out.println("multilevel: " + levels + " levels, " + size + " labels, " + countLevel(levels - 1) + " on the coarsest level");
+	}
+
+	private double distance(int i, int j)
+	{
+		double dx = labels[i].getNode().getX() - labels[j].getNode().getX();
+		double dy = labels[i].getNode().getY() - labels[j].getNode().getY();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private int countLevel(int l)
+	{
+		int n = 0;
+		for (int i = 0; i < size; i++)
+		{
+			if (level[i] >= l)
+				n++;
+		}
+		return n;
+	}
+
+	public String getStatusString()
+	{
+		if (isActive() && level != null)
+			return new String("level: " + Math.max(current, 0) + " of " + levels);
+		else
+			return null;
+	}
+}
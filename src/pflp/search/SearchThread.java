@@ -22,10 +22,12 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 package pflp.search;
 
 import java.util.Iterator;
+import java.util.SplittableRandom;
 
 import javax.swing.JOptionPane;
 
 import pflp.*;
+import pflp.util.IndexedHeap;
 
 /**
  * The thread implementing the algorithm.
@@ -41,6 +43,9 @@ public abstract class SearchThread implements Runnable
 
 	protected long iterations = 0;
 
+	//the random stream of the current run, see PFLPApp.createRandom()
+	protected SplittableRandom random = null;
+
 	public SearchThread()
 	{
 		super();
@@ -104,7 +109,7 @@ public abstract class SearchThread implements Runnable
 			return;
 		}
 
-		//PFLPApp.random_generator.setSeed(181278);
+		random = PFLPApp.createRandom();
 		precompute();
 
 		while (!iterate());
@@ -136,6 +141,7 @@ public abstract class SearchThread implements Runnable
 
 
 		iterations = 0;
+		random = PFLPApp.createRandom();
 		precompute();
 
 		if (s != null)
@@ -216,22 +222,150 @@ public abstract class SearchThread implements Runnable
 	protected abstract void precompute();
 	
 	/**
-	 * subsequently removes the label with the maximum
-	 * number of intersections, until no more intersections
-	 * are detected
+	 * re-optimizes the given labels after the instance has been changed
+	 * (see {@link Solution#takeDirtyLabels()}). The default implementation
+	 * moves every dirty label that is unplaced or overlapping to the corner
+	 * position with the fewest conflicts and removes remaining
+	 * intersections around the dirty labels with cleanupSolution().
+	 * Algorithms may override this to do a local search in the affected
+	 * region.
+	 * @param solution the solution to repair
+	 * @param dirty indices of the affected labels
+	 */
+	public void repair(Solution solution, int[] dirty)
+	{
+		Label[] labels = solution.getLabels();
+
+		for (int k = 0; k < dirty.length; k++)
+		{
+			Label l = labels[dirty[k]];
+
+			if (!l.getUnplacable() && !l.isOverlapping())
+				continue;
+
+			l.setUnplacable(false);
+
+			int best_pos = Label.TOPLEFT;
+			int best_ovl = -1;
+			for (int pos = Label.TOPLEFT; pos <= Label.BOTTOMRIGHT && best_ovl != 0; pos++)
+			{
+				l.moveTo(pos);
+
+				int ovl_count = 0;
+				Iterator it = l.getNeighbours().iterator();
+				while (it.hasNext())
+				{
+					Label l2 = (Label) it.next();
+					if (!l2.getUnplacable() && l.doesIntersect(l2))
+						ovl_count++;
+				}
+
+				if (best_ovl == -1 || ovl_count < best_ovl)
+				{
+					best_ovl = ovl_count;
+					best_pos = pos;
+				}
+			}
+
+			l.moveTo(best_pos);
+		}
+
+		if (PFLPApp.getOptionPointSelection())
+			cleanupSolution(solution, dirty);
+	}
+
+	/**
+	 * labels only the given region of the solution, all other labels
+	 * keep their placement (placed or unplaced) and are treated as fixed
+	 * obstacles. Intersections are not removed. The default
+	 * implementation does nothing, algorithms that support regions
+	 * override this.
+	 * @param solution the solution
+	 * @param region the labels that may be moved
+	 * @return false <-> the algorithm doesn't support regions
+	 */
+	public boolean labelRegion(Solution solution, boolean[] region)
+	{
+		return false;
+	}
+
+	/**
+	 * subsequently removes the label with the maximum number of
+	 * intersections per weight (see PointFeature.getWeight()), until
+	 * no more intersections are detected. On equal ratios the label
+	 * with the smaller index is removed first. If enabled, the
+	 * {@link ExactPostprocessing exact postprocessing} is applied afterwards.
 	 */
 	public void cleanupSolution(Solution solution)
+	{
+		cleanupSolution(solution, null);
+	}
+
+	/**
+	 * removes intersecting labels like cleanupSolution(Solution), but
+	 * only the given labels and their neighbours are checked. This finds
+	 * all intersections, if the solution was free of intersections before
+	 * the given labels have been changed. The exact postprocessing is only
+	 * applied to the whole solution.
+	 * @param solution the solution
+	 * @param changed indices of the changed labels (null <-> all labels)
+	 */
+	public void cleanupSolution(Solution solution, int[] changed)
 	{
 		Label[] labels = solution.getLabels();
 		int n = labels.length;
 		int numoverlaps[] = new int[n];
+		double weight[] = new double[n];
+
+		//the labels to check
+		int[] checked = null;
+		int nChecked = 0;
+
+		if (changed == null)
+		{
+			checked = new int[n];
+			for (int i = 0; i < n; i++)
+				checked[nChecked++] = i;
+		}
+		else
+		{
+			boolean[] marked = new boolean[n];
+			int capacity = 0;
+			for (int k = 0; k < changed.length; k++)
+				capacity += 1 + labels[changed[k]].getNeighbours().size();
 
-		int next_idx = -1;
+			checked = new int[capacity];
+			for (int k = 0; k < changed.length; k++)
+			{
+				int i = changed[k];
+				if (!marked[i])
+				{
+					marked[i] = true;
+					checked[nChecked++] = i;
+				}
+
+				Iterator it = labels[i].getNeighbours().iterator();
+				while (it.hasNext())
+				{
+					int j = ((Label) it.next()).getIndex();
+					if (!marked[j])
+					{
+						marked[j] = true;
+						checked[nChecked++] = j;
+					}
+				}
+			}
+		}
+
+		//all placed labels with at least one intersection
+		IndexedHeap victims = new IndexedHeap(n);
 		
-		for(int i=0; i < n; i++)
+		for(int k=0; k < nChecked; k++)
 		{
+			int i = checked[k];
 			Label l = labels[i];
 			numoverlaps[i] = 0;
+			weight[i] = l.getNode().getWeight();
 			
 			if(!l.getUnplacable())
 			{
@@ -244,70 +378,37 @@ public abstract class SearchThread implements Runnable
 				}
 			}
 			
-			if(numoverlaps[i] > 0 && (next_idx == -1 || numoverlaps[i] > numoverlaps[next_idx]))
-				next_idx = i;
+			if(numoverlaps[i] > 0)
+				victims.put(i, numoverlaps[i] / weight[i]);
 		}
 
+		int next_idx = victims.poll();
 		while(next_idx > -1)
 		{
-			//remove label next_idx
+			//remove label next_idx and update the keys of its neighbours
 			Iterator it = labels[next_idx].getNeighbours().iterator();
 			while (it.hasNext())
 			{
 				Label l2 = (Label) it.next();
 				if (!l2.getUnplacable() && labels[next_idx].doesIntersect(l2))
-					numoverlaps[l2.getIndex()]--;
+				{
+					int j = l2.getIndex();
+					numoverlaps[j]--;
+					
+					if(numoverlaps[j] > 0)
+						victims.put(j, numoverlaps[j] / weight[j]);
+					else
+						victims.remove(j);
+				}
 			}
 		
 			labels[next_idx].setUnplacable(true);
 
 			//find next victim 
-			next_idx = -1;
-			for(int i=0; i < n; i++)
-			{
-				if(!labels[i].getUnplacable() && numoverlaps[i] > 0 && (next_idx == -1 || numoverlaps[i] > numoverlaps[next_idx]))
-					next_idx = i;
-			}		
+			next_idx = victims.poll();
 		}
-	}
-	
-	public void cleanupSolutionSimple(Solution solution)
-	{
-		//simple algorithm...
-		Label[] labels = solution.getLabels();
-		int size = labels.length;
-		Label found = null;
-		int max_ovl = -1;
-		
-		do
-		{
-			found = null;
-			max_ovl = -1;
-			for (int i = 0; i < size; i++)
-			{
-				if (labels[i].getUnplacable())
-					continue;
-				
-				int ovl_count = 0;
-				Iterator it = labels[i].getNeighbours().iterator();
-				while (it.hasNext())
-				{
-					Label l2 = (Label) it.next();
-					if (!l2.getUnplacable() && labels[i].doesIntersect(l2))
-						ovl_count++;
-				}
-				
-				if (ovl_count > 0 && (found == null || ovl_count > max_ovl))
-				{
-					max_ovl = ovl_count;
-					found = labels[i];
-				}
-			}
-			
-			if (found != null)
-				found.setUnplacable(true);
-			
-		}
-		while (found != null);
+
+		if (changed == null && PFLPApp.getOptionExactPostprocessing() > 0)
+			new ExactPostprocessing(solution).execute(PFLPApp.getOptionExactPostprocessing());
 	}
 }
@@ -20,14 +20,13 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package pflp.search;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 
 import pflp.Label;
 import pflp.PFLPApp;
 import pflp.Solution;
+import pflp.util.IndexedSet;
 
 /**
  * simulated annealing like proposed by Christensen/Marks/Shieber
@@ -38,11 +37,38 @@ public class SimulatedAnnealing extends SearchThread
 {
 	private static int MOVES_PER_ITERATION = 500;
 	
-	private static long REMOVE_PENALTY = 1;
+	//penalty for an unplaced label of weight 1 (see PointFeature.getWeight())
+	private static double REMOVE_PENALTY = 1;
 	
-	private double temperature = 0;
+	//neighbourhood of the dirty labels that is re-optimized by repair()
+	private static int REPAIR_HOPS = 2;
+	
+	//the initial temperatures: p should be 2/3 when dE = 1 for a new
+	//solution and 1/10 when an existing one is repaired
+	static final double START_TEMPERATURE = -1.0 / Math.log(1. / 3.);
+	static final double REPAIR_TEMPERATURE = -1.0 / Math.log(1. / 10.);
+	
+	//maximal number of stages and the factor of geometric cooling
+	private static int MAX_STAGES = 50;
+	private static double COOLING_RATE = 0.9;
+	
+	private int schedule_type = CoolingSchedule.GEOMETRIC;
+	private CoolingSchedule schedule = null;
 	private int size = 0;
 
+	//labels that may be moved (null <-> all labels) and their number.
+	//The state below is indexed by the local indices of the region, see
+	//CandidateModel
+	private int[] region = null;
+	private int nMovable = 0;
+
+	//the local index of every label of the region, -1 for the others.
+	//Grows with the solution and is reset after each run
+	private int[] local = null;
+
+	//remove the remaining intersections at the end
+	private boolean cleanup = true;
+
 	private int nRejected = 0;
 	private int nTaken = 0;
 	private int nStages = 0;
@@ -50,65 +76,281 @@ public class SimulatedAnnealing extends SearchThread
 	private Label[] labels = null;
 	private Solution solution = null;
 
-	private HashSet obstructedLabels = null;
-	private long objective = 0;
+	private IndexedSet obstructedLabels = null;
+	private double objective = 0;
+
+	//the penalty for removing each label, scaled by its weight
+	private double[] remove_penalty = null;
+
+	//the model used for the candidate positions
+	private int position_model = CandidateModel.FOUR_POSITION;
+
+	//the candidate positions, the current position and the number of
+	//intersections of each label (the last entry is the pseudo label
+	//for the fixed labels outside the region)
+	private CandidateModel candidates = null;
+	private int[] position = null;
+	private int[] overlaps = null;
+
+	//the labels that intersect the label at its new position
+	private int[] newOverlapping = new int[16];
 	
 	public SimulatedAnnealing()
 	{
 		super();
-		name = new String("simulated annealing (4pos)");
+		setPositionModel(CandidateModel.FOUR_POSITION);
+	}
+
+	/**
+	 * selects the cooling schedule
+	 * @param type see CoolingSchedule
+	 */
+	public void setCoolingSchedule(int type)
+	{
+		schedule_type = type;
+	}
+
+	/**
+	 * selects the candidate positions of the labels
+	 * @param model see CandidateModel
+	 */
+	public void setPositionModel(int model)
+	{
+		position_model = model;
+		name = new String("simulated annealing (" + CandidateModel.getModelName(model) + ")");
 	}
 
 	protected void precompute()
 	{
-		//create new HashSet containing all obstructed labels
-		obstructedLabels = new HashSet();
-		
 		//create initial solution
 		if (PFLPApp.solution == null)
-		{
 			PFLPApp.solution = new Solution(PFLPApp.instance);
-			size = PFLPApp.solution.size();
-			labels = PFLPApp.solution.getLabels();
-		}
-		else
+
+		cleanup = true;
+		initialize(PFLPApp.solution, null, START_TEMPERATURE);
+	}
+
+	/**
+	 * re-labels the given dirty labels and their neighbours up to a
+	 * distance of REPAIR_HOPS. The annealing starts from the given solution
+	 * at a low temperature and moves only labels of this region.
+	 */
+	public void repair(Solution s, int[] dirty)
+	{
+		repair(s, dirty, REPAIR_HOPS);
+	}
+
+	/**
+	 * re-labels the given dirty labels and their k-hop neighbours by
+	 * simulated annealing, starting at the current placement
+	 * @param s the solution to repair
+	 * @param dirty indices of the affected labels
+	 * @param hops size of the neighbourhood that may be changed
+	 */
+	public void repair(Solution s, int[] dirty, int hops)
+	{
+		Label[] lbls = s.getLabels();
+		int[] l = getLocalIndices(lbls.length);
+
+		random = PFLPApp.createRandom();
+
+		//breadth first search up to the given depth, visited labels are
+		//marked in l
+		int[] queue = new int[Math.max(16, 2 * dirty.length)];
+		int head = 0, tail = 0;
+		for (int k = 0; k < dirty.length; k++)
 		{
-			size = PFLPApp.solution.size();
-			labels = PFLPApp.solution.getLabels();
+			if (l[dirty[k]] < 0)
+			{
+				l[dirty[k]] = 0;
+				queue[tail++] = dirty[k];
+			}
+		}
 
-			//check each label if it is a valid 4pos placement
-			for (int i = 0; i < size; i++)
+		for (int h = 0; h < hops; h++)
+		{
+			int end = tail;
+			for (; head < end; head++)
 			{
-				Label l = labels[i];
-				if (!l.isBottomLeft() && !l.isBottomRight() && !l.isTopLeft() && !l.isTopRight())
-					l.moveTo(Label.TOPLEFT);
+				Iterator it = lbls[queue[head]].getNeighbours().iterator();
+				while (it.hasNext())
+				{
+					int j = ((Label) it.next()).getIndex();
+					if (l[j] < 0)
+					{
+						if (tail == queue.length)
+							queue = Arrays.copyOf(queue, 2 * tail);
+
+						l[j] = 0;
+						queue[tail++] = j;
+					}
+				}
 			}
 		}
 
-		solution = PFLPApp.solution;
+		int[] moved = Arrays.copyOf(queue, tail);
+		int[] members = Arrays.copyOf(queue, tail);
+		Arrays.sort(members);
+
+		anneal(s, members, REPAIR_TEMPERATURE, false);
+
+		//only labels of the region have been moved
+		if (PFLPApp.getOptionPointSelection())
+			cleanupSolution(s, moved);
+	}
+
+	/**
+	 * anneals the labels of the region from the start temperature, the
+	 * other labels are not moved
+	 */
+	public boolean labelRegion(Solution s, boolean[] region)
+	{
+		random = PFLPApp.createRandom();
+		anneal(s, region, START_TEMPERATURE, false);
+		return true;
+	}
+
+	/**
+	 * anneals the labels of the given region, starting at the current
+	 * placement. Unplaced labels outside the region are ignored.
+	 * @param s the solution
+	 * @param r labels that may be moved
+	 * @param start_temperature the initial temperature
+	 * @param c remove the remaining intersections at the end
+	 */
+	void anneal(Solution s, boolean[] r, double start_temperature, boolean c)
+	{
+		int n = 0;
+		for (int i = 0; i < r.length; i++)
+		{
+			if (r[i])
+				n++;
+		}
+
+		int[] members = new int[n];
+		for (int i = 0, k = 0; i < r.length; i++)
+		{
+			if (r[i])
+				members[k++] = i;
+		}
+
+		anneal(s, members, start_temperature, c);
+	}
 
-		//p should be 2/3 when dE = 1
-		temperature = -1.0 / Math.log(1. / 3.);
-		System.out.println("simulated annealing starting with temperature " + temperature);
+	/**
+	 * anneals the given labels, see anneal(Solution, boolean[], double, boolean)
+	 * @param members the indices of the labels in ascending order
+	 */
+	private void anneal(Solution s, int[] members, double start_temperature, boolean c)
+	{
+		int[] l = getLocalIndices(s.size());
+		for (int k = 0; k < members.length; k++)
+			l[members[k]] = k;
+
+		try
+		{
+			cleanup = c;
+			initialize(s, members, start_temperature);
+
+			while (!iterate());
+		}
+		finally
+		{
+			for (int k = 0; k < members.length; k++)
+				l[members[k]] = -1;
+
+			region = null;
+			cleanup = true;
+		}
+	}
+
+	/**
+	 * @return the local indices for a solution of at least the given
+	 * size, all -1
+	 */
+	private int[] getLocalIndices(int n)
+	{
+		if (local == null || local.length < n)
+		{
+			local = new int[local == null ? n : Math.max(n, 2 * local.length)];
+			Arrays.fill(local, -1);
+		}
+
+		return local;
+	}
+
+	/**
+	 * prepares the annealing schedule for the given solution
+	 * @param s the solution to start with
+	 * @param r labels that may be moved in ascending order (null <-> all
+	 * labels), their local indices must be stored in local
+	 * @param start_temperature the initial temperature
+	 */
+	private void initialize(Solution s, int[] r, double start_temperature)
+	{
+		solution = s;
+		region = r;
+		size = solution.size();
+		labels = solution.getLabels();
+
+		candidates = new CandidateModel(solution, position_model, region, local);
+		nMovable = candidates.getSize();
+
+		//the indices of all obstructed labels
+		obstructedLabels = new IndexedSet(nMovable);
+
+		remove_penalty = new double[nMovable];
+		position = new int[nMovable + 1];
+		overlaps = new int[nMovable + 1];
+
+		for (int i = 0; i < nMovable; i++)
+		{
+			Label l = candidates.getLabel(i);
+			remove_penalty[i] = REMOVE_PENALTY * l.getNode().getWeight();
+
+			//move placed labels to the closest candidate position
+			if (candidates.getPosition(i) == CandidateModel.OTHER)
+				candidates.moveTo(i, candidates.getNearestPosition(i));
+		}
+
+		for (int i = 0; i < nMovable; i++)
+		{
+			Label l = candidates.getLabel(i);
+			position[i] = candidates.getPosition(i);
+
+			Iterator it = l.getNeighbours().iterator();
+			while (it.hasNext())
+			{
+				Label o = (Label) it.next();
+				if (!l.getUnplacable() && !o.getUnplacable() && o.doesIntersect(l))
+					overlaps[i]++;
+			}
+		}
+
+		schedule = CoolingSchedule.create(schedule_type);
+		schedule.start(start_temperature, COOLING_RATE, MAX_STAGES);
+		System.out.println("simulated annealing starting with temperature " + start_temperature + " (" + CoolingSchedule.getScheduleName(schedule_type) + " cooling)");
 		nTaken = nStages = nRejected = 0;
 
-		//initialize the HashSet with all obstructed labels
-		for (int i = 0; i < size; i++)
+		//initialize the set with all obstructed labels
+		for (int i = 0; i < nMovable; i++)
 		{
-			if(labels[i].isOverlapping() || labels[i].getUnplacable())
-				obstructedLabels.add(labels[i]);
+			if(overlaps[i] > 0 || candidates.getLabel(i).getUnplacable())
+				obstructedLabels.add(i);
 		}
 		
-		objective = calcObjectiveFunction();
+		//in repair mode the objective is kept relative to the start
+		objective = region == null ? calcObjectiveFunction() : 0;
 	}
 
 	protected boolean iterate()
 	{
-		List  newOverlappingLabels = new LinkedList();
+		int nPositions = candidates.getPositions();
 		for (int k = 0; k < MOVES_PER_ITERATION; k++)
 		{			
 			//choose random overlapping label
 			Label l = null;
+			int index = 0;
 			boolean found = false;
 			do
 			{
@@ -118,50 +360,32 @@ public class SimulatedAnnealing extends SearchThread
 					return true;
 				}
 
-				int i = PFLPApp.random_generator.nextInt(obstructedLabels.size());
-
-				//is there a better way to get the n_th Element out of a set?
-				Iterator it = obstructedLabels.iterator();
-				for(int j=0; j <= i && it.hasNext(); j++)
-					l = (Label) it.next();
+				index = obstructedLabels.get(random.nextInt(obstructedLabels.size()));
+				l = candidates.getLabel(index);
 				
 				//we don't care about removing non-obstructed labels from the set, 
 				//so this must be checked here...
-				if(l.getUnplacable() || l.isOverlapping())
+				if(l.getUnplacable() || overlaps[index] > 0)
 					found = true;
 				else
-					obstructedLabels.remove(l);
+					obstructedLabels.remove(index);
 
 			} while(!found);
+			
+			int first = candidates.getFirstNeighbour(index);
+			int end = candidates.getEndNeighbour(index);
 				
-			//0 -> UNPLACED
-			//1 -> TOPLEFT
-			//2 -> TOPRIGHT
-			//3 -> BOTTOMLEFT
-			//4 -> BOTTOMRIGHT
-			int old_pos = 0;
-			int next_pos = -1;
-			if(!l.getUnplacable())
-			{
-				if (l.isTopLeft())
-					old_pos = 1;
-				else if (l.isTopRight())
-					old_pos = 2;
-				else if (l.isBottomLeft())
-					old_pos = 3;
-				else if (l.isBottomRight())
-					old_pos = 4;
-				else 
-					System.err.println("should be never reached [0]!");
-			}
+			//CandidateModel.UNPLACED or one of the candidate positions
+			int old_pos = position[index];
+			int next_pos = CandidateModel.UNPLACED;
 			
 			boolean moved = false;
 			if(PFLPApp.getOptionPointSelection())
 			{
 				//overlapping labels are removed with p = 1/4
-				if(old_pos != 0 && l.isOverlapping() && PFLPApp.random_generator.nextDouble() <= 1./4.)
+				if(old_pos != CandidateModel.UNPLACED && overlaps[index] > 0 && random.nextDouble() <= 1./4.)
 				{
-					next_pos = 0;
+					next_pos = CandidateModel.UNPLACED;
 					moved = true;
 				}
 			}
@@ -169,77 +393,54 @@ public class SimulatedAnnealing extends SearchThread
 			if(!moved)
 			{
 				//reinsert or move the label to another randomly chosen position
-				if(old_pos == 0)
-					next_pos = PFLPApp.random_generator.nextInt(4) + 1;
+				if(old_pos == CandidateModel.UNPLACED)
+					next_pos = random.nextInt(nPositions);
 				else
-					next_pos = (old_pos + PFLPApp.random_generator.nextInt(3)) % 4 + 1;
+					next_pos = (old_pos + 1 + random.nextInt(nPositions - 1)) % nPositions;
 			}
 			
 			//calculate the change of the objective function (< 0 means better)...
-			long dE = 0;
-			Label clone = null;
-			newOverlappingLabels.clear();
+			double dE = 0;
+			int nNewOverlapping = 0;
 			
-			if (next_pos == 0) //we remove the label
+			if (next_pos == CandidateModel.UNPLACED) //we remove the label
 			{
-				dE += REMOVE_PENALTY; //deleted label
+				dE += remove_penalty[index]; //deleted label
 				
-				Iterator orig_neighbours = l.getNeighbours().iterator();
-				while(orig_neighbours.hasNext())
+				for(int e = first; e < end; e++)
 				{
-					Label n = (Label) orig_neighbours.next();
-					if(!n.getUnplacable() && n.doesIntersect(l))
+					int pos = position[candidates.getNeighbour(e)];
+					if(pos != CandidateModel.UNPLACED && candidates.isConflict(index, old_pos, e, pos))
 						dE --;
 				}
 			}
 			else
 			{
-				clone = new Label(l);
-				clone.setUnplacable(false);
-				switch(next_pos)
-				{
-					case 1:
-						clone.moveTo(Label.TOPLEFT);
-						break;
-					case 2:
-						clone.moveTo(Label.TOPRIGHT);
-						break;
-					case 3:
-						clone.moveTo(Label.BOTTOMLEFT);
-						break;
-					case 4:
-						clone.moveTo(Label.BOTTOMRIGHT);
-						break;
-				}
-				
-				if(old_pos == 0) //original label was unplaced
-					dE -= REMOVE_PENALTY;
+				if(old_pos == CandidateModel.UNPLACED) //original label was unplaced
+					dE -= remove_penalty[index];
 
-				boolean add_once = false;
+				if(newOverlapping.length < end - first + 1)
+					newOverlapping = new int[2 * (end - first + 1)];
 				
-				Iterator orig_neighbours = l.getNeighbours().iterator();
-				while(orig_neighbours.hasNext())
+				for(int e = first; e < end; e++)
 				{
-					Label neigh = (Label) orig_neighbours.next();
+					int pos = position[candidates.getNeighbour(e)];
 					
-					if(neigh.getUnplacable())
+					if(pos == CandidateModel.UNPLACED)
 						continue;
 					
 					boolean old_overplots = false;
-					if(!l.getUnplacable())
-						old_overplots = neigh.doesIntersect(l);
+					if(old_pos != CandidateModel.UNPLACED)
+						old_overplots = candidates.isConflict(index, old_pos, e, pos);
 					
-					boolean new_overplots = neigh.doesIntersect(clone);
+					boolean new_overplots = candidates.isConflict(index, next_pos, e, pos);
 					
 					if(new_overplots)
 					{
-						if(!add_once)
-						{
-							add_once = true;
-							newOverlappingLabels.add(l);
-						}
+						if(nNewOverlapping == 0)
+							newOverlapping[nNewOverlapping++] = index;
 						
-						newOverlappingLabels.add(neigh);
+						newOverlapping[nNewOverlapping++] = candidates.getNeighbour(e);
 					}
 					
 					if(old_overplots && !new_overplots)
@@ -249,38 +450,64 @@ public class SimulatedAnnealing extends SearchThread
 				}
 			}
 
-			double p = PFLPApp.random_generator.nextDouble();
+			double p = random.nextDouble();
 
-			if (dE == 0 || dE > 0 && p >= Math.exp(-((double)dE) / temperature))
+			if (dE == 0 || dE > 0 && p >= Math.exp(-dE / schedule.getTemperature()))
 			{
 				nRejected++;
+				schedule.moveDone(false, dE);
 			}
 			else
 			{
 				nTaken++;
 				
+				//update the intersection counts
+				for(int e = first; e < end; e++)
+				{
+					int j = candidates.getNeighbour(e);
+					int pos = position[j];
+					
+					if(pos == CandidateModel.UNPLACED)
+						continue;
+					
+					boolean old_overplots = old_pos != CandidateModel.UNPLACED && candidates.isConflict(index, old_pos, e, pos);
+					boolean new_overplots = next_pos != CandidateModel.UNPLACED && candidates.isConflict(index, next_pos, e, pos);
+					
+					if(old_overplots && !new_overplots)
+					{
+						overlaps[index]--;
+						overlaps[j]--;
+					}
+					else if(!old_overplots && new_overplots)
+					{
+						overlaps[index]++;
+						overlaps[j]++;
+					}
+				}
+				position[index] = next_pos;
+				
 				//apply the move
-				if(next_pos == 0)
+				if(next_pos == CandidateModel.UNPLACED)
 				{
 					l.setUnplacable(true);
-					obstructedLabels.add(l);
+					obstructedLabels.add(index);
 				}
 				else
 				{
-					l.moveTo(clone.getOffsetHorizontal(), clone.getOffsetVertical());
+					candidates.moveTo(index, next_pos);
 					l.setUnplacable(false);
 
 					//add new produced intersections to our set of obstructed labels...
-					Iterator itInt=newOverlappingLabels.iterator();
-					while(itInt.hasNext())
+					for(int j = 0; j < nNewOverlapping; j++)
 					{
-						Label o = (Label) itInt.next();
-						obstructedLabels.add(o);
+						if (newOverlapping[j] < nMovable)
+							obstructedLabels.add(newOverlapping[j]);
 					}
 				}
 				
 				//save new objective function value
 				objective += dE;
+				schedule.moveDone(true, dE);
 				
 //				if(objective != calcObjectiveFunction())
 //				{
@@ -289,7 +516,7 @@ public class SimulatedAnnealing extends SearchThread
 			}
 
 			//cool?
-			if (nTaken + nRejected >= 20 * size || nTaken > 5 * size)
+			if (nTaken + nRejected >= 20 * nMovable || nTaken > 5 * nMovable)
 			{
 				if (nTaken == 0) //stop
 				{
@@ -298,16 +525,15 @@ public class SimulatedAnnealing extends SearchThread
 					return true;
 				}
 
-				//decrease temperature by 10%
-				temperature = temperature * 0.9;
+				schedule.endStage(nTaken, nRejected);
 				
-				System.out.println("decreasing temp. to " +  temperature + ", nTaken = " + nTaken + ", nRejected = " + nRejected + ", size = " + size);
+				System.out.println("decreasing temp. to " +  schedule.getTemperature() + ", nTaken = " + nTaken + ", nRejected = " + nRejected + ", size = " + size);
 				nStages++;
 				nRejected = 0;
 				nTaken = 0;
 			}
 
-			if (nStages > 50) //stop 
+			if (nStages > MAX_STAGES) //stop 
 			{
 				System.out.println("stopping (max stages reached)...");
 				cleanupSolution();
@@ -317,17 +543,17 @@ public class SimulatedAnnealing extends SearchThread
 		return false;
 	}
 
-	private long calcObjectiveFunction()
+	private double calcObjectiveFunction()
 	{
 		long overplots = 0;
-		long removed = 0;
+		double removed = 0;
 		//count the number of pairwise overplots + #delted labels...
 		for(int i=0; i<size; i++)
 		{
 			Label l1 = labels[i];
 			if(l1.getUnplacable())
 			{
-				removed ++;
+				removed += remove_penalty[i];
 			}
 			else
 			{
@@ -341,12 +567,12 @@ public class SimulatedAnnealing extends SearchThread
 			}
 		}
 
-		return (overplots / 2) + (removed * REMOVE_PENALTY);
+		return (overplots / 2) + removed;
 	}
 
 	private void cleanupSolution()
 	{
-		if(PFLPApp.getOptionPointSelection())
+		if(cleanup && PFLPApp.getOptionPointSelection())
 			super.cleanupSolution(solution);
 	}
 }
@@ -0,0 +1,191 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package pflp.util;
+
+import java.util.Arrays;
+
+/**
+ * A binary max-heap over the integers 0..n-1 with a double key for
+ * each of them. The keys of contained elements can be changed in
+ * O(log n). On equal keys the smaller element is considered larger,
+ * i.e. it is returned first by peek().
+ */
+public class IndexedHeap
+{
+	private int[] heap = null;
+	private int size = 0;
+
+	//position of every element in the heap, -1 <-> not contained
+	private int[] index = null;
+	private double[] key = null;
+
+	/**
+	 * creates an empty heap for the elements 0..n-1
+	 */
+	public IndexedHeap(int n)
+	{
+		heap = new int[n];
+		index = new int[n];
+		key = new double[n];
+		Arrays.fill(index, -1);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public boolean contains(int i)
+	{
+		return index[i] >= 0;
+	}
+
+	/**
+	 * @return the key of element i
+	 */
+	public double getKey(int i)
+	{
+		return key[i];
+	}
+
+	/**
+	 * @return the element with the maximal key or -1, if the heap is empty
+	 */
+	public int peek()
+	{
+		return size > 0 ? heap[0] : -1;
+	}
+
+	/**
+	 * removes and returns the element with the maximal key (or -1,
+	 * if the heap is empty)
+	 */
+	public int poll()
+	{
+		int i = peek();
+		if (i >= 0)
+			remove(i);
+		return i;
+	}
+
+	/**
+	 * inserts element i with the given key or changes its key, if
+	 * i is already contained
+	 */
+	public void put(int i, double k)
+	{
+		key[i] = k;
+
+		if (index[i] < 0)
+		{
+			set(size++, i);
+			siftUp(size - 1);
+		}
+		else
+		{
+			siftUp(index[i]);
+			siftDown(index[i]);
+		}
+	}
+
+	/**
+	 * removes element i, if it is contained
+	 */
+	public void remove(int i)
+	{
+		int pos = index[i];
+		if (pos < 0)
+			return;
+
+		int last = heap[--size];
+		index[i] = -1;
+
+		if (pos < size)
+		{
+			set(pos, last);
+			siftUp(pos);
+			siftDown(index[last]);
+		}
+	}
+
+	/**
+	 * removes all elements
+	 */
+	public void clear()
+	{
+		for (int k = 0; k < size; k++)
+			index[heap[k]] = -1;
+		size = 0;
+	}
+
+	private boolean greater(int a, int b)
+	{
+		return key[a] > key[b] || (key[a] == key[b] && a < b);
+	}
+
+	private void set(int pos, int i)
+	{
+		heap[pos] = i;
+		index[i] = pos;
+	}
+
+	private void siftUp(int pos)
+	{
+		int i = heap[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >> 1;
+			if (!greater(i, heap[parent]))
+				break;
+
+			set(pos, heap[parent]);
+			pos = parent;
+		}
+		set(pos, i);
+	}
+
+	private void siftDown(int pos)
+	{
+		int i = heap[pos];
+		while (true)
+		{
+			int child = 2 * pos + 1;
+			if (child >= size)
+				break;
+
+			if (child + 1 < size && greater(heap[child + 1], heap[child]))
+				child++;
+
+			if (!greater(heap[child], i))
+				break;
+
+			set(pos, heap[child]);
+			pos = child;
+		}
+		set(pos, i);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package pflp.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of the integers 0..n-1. The elements are kept in an array, a
+ * removed element is replaced by the last one. So add(), remove() and
+ * contains() take O(1) and get(k) returns the k-th element, e.g. to pick
+ * a random one. Unlike a HashSet of objects the order of the elements
+ * depends only on the sequence of operations.
+ */
+public class IndexedSet
+{
+	private int[] elements = null;
+	private int size = 0;
+
+	//position of every element in elements, -1 <-> not contained
+	private int[] index = null;
+
+	/**
+	 * creates an empty set for the elements 0..n-1
+	 */
+	public IndexedSet(int n)
+	{
+		elements = new int[n];
+		index = new int[n];
+		Arrays.fill(index, -1);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public boolean contains(int i)
+	{
+		return index[i] >= 0;
+	}
+
+	/**
+	 * @return the k-th element (0 <= k < size())
+	 */
+	public int get(int k)
+	{
+		return elements[k];
+	}
+
+	/**
+	 * adds element i, if it is not contained yet
+	 */
+	public void add(int i)
+	{
+		if (index[i] >= 0)
+			return;
+
+		index[i] = size;
+		elements[size++] = i;
+	}
+
+	/**
+	 * removes element i, if it is contained
+	 */
+	public void remove(int i)
+	{
+		int k = index[i];
+		if (k < 0)
+			return;
+
+		int last = elements[--size];
+		elements[k] = last;
+		index[last] = k;
+		index[i] = -1;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+Copyright Dietmar Ebner, 2004, ebner@apm.tuwien.ac.at
+
+This file is part of PFLP.
+
+PFLP is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+PFLP is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PFLP; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package pflp.util;
+
+/**
+ * Executes a number of independent tasks on several threads. The tasks
+ * are numbered 0..n-1 and handed out one by one, so long running tasks
+ * don't delay the others.
+ */
+public class WorkerPool
+{
+	/**
+	 * a task that can be executed by the pool
+	 */
+	public interface Task
+	{
+		/**
+		 * executes the task with the given number
+		 */
+		public void execute(int i);
+	}
+
+	private int threads = 1;
+
+	/**
+	 * creates a pool that uses one thread per available processor
+	 */
+	public WorkerPool()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * creates a pool that uses at most the given number of threads
+	 */
+	public WorkerPool(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException(threads + " < 1");
+
+		this.threads = threads;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * executes the tasks 0..n-1 and blocks until all of them are done.
+	 * If a task throws an exception, no further tasks are started and
+	 * the first exception is rethrown after the running tasks are done.
+	 */
+	public void execute(final int n, final Task task)
+	{
+		//the next task to hand out
+		final int[] next = new int[1];
+
+		//the first exception thrown by a task
+		final Throwable[] failure = new Throwable[1];
+
+		Runnable worker = new Runnable()
+		{
+			public void run()
+			{
+				while (true)
+				{
+					int i;
+					synchronized (next)
+					{
+						if (next[0] >= n)
+							return;
+						i = next[0]++;
+					}
+
+					try
+					{
+						task.execute(i);
+					}
+					catch (Throwable e)
+					{
+						synchronized (next)
+						{
+							if (failure[0] == null)
+								failure[0] = e;
+
+							//don't hand out any further tasks
+							next[0] = n;
+						}
+						return;
+					}
+				}
+			}
+		};
+
+		//the calling thread does its share of the work as well
+		Thread[] t = new Thread[Math.max(0, Math.min(threads, n) - 1)];
+		for (int k = 0; k < t.length; k++)
+		{
+			t[k] = new Thread(worker);
+			t[k].start();
+		}
+
+		worker.run();
+
+		for (int k = 0; k < t.length; k++)
+		{
+			while (t[k].isAlive())
+			{
+				try
+				{
+					t[k].join();
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+		}
+
+		if (failure[0] instanceof RuntimeException)
+			throw (RuntimeException) failure[0];
+		else if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		else if (failure[0] != null)
+			throw new RuntimeException(failure[0]);
+	}
+}